@@ -0,0 +1,86 @@
+import java.util.Random;
+
+// Microbenchmark do kernel ROT13: compara a versão antiga (String/StringBuilder por linha),
+// o laço byte a byte com desvio e módulo, e a tabela de Rot13.
+// Cada variante faz aquecimento antes da medição para o JIT compilar o laço.
+public class Rot13Benchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    // Evita que o JIT elimine o trabalho cujo resultado não é usado
+    private static long blackhole;
+
+    public static void main(String[] args) {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        byte[] data = sampleData(sizeMb * 1024 * 1024);
+        String[] lines = new String(data).split("\n");
+
+        run("string (StringBuilder por linha)", data.length, () -> {
+            for (String line : lines) {
+                blackhole += legacyRot13(line).length();
+            }
+        });
+        run("byte[] com desvio e módulo", data.length, () -> {
+            branchRot13(data, 0, data.length);
+            blackhole += data[0];
+        });
+        run("byte[] com tabela (Rot13)", data.length, () -> {
+            Rot13.apply(data, 0, data.length);
+            blackhole += data[0];
+        });
+
+        if (blackhole == 42) {
+            System.out.println();
+        }
+    }
+
+    private static void run(String name, int bytes, Runnable round) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            round.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-36s %8.1f MB/s%n", name, bytes / (best / 1e9) / (1024 * 1024));
+    }
+
+    // Linhas curtas de letras e dígitos, como as do dataset
+    private static byte[] sampleData(int size) {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+        Random random = new Random(42);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (i % 11 == 10) ? (byte) '\n' : (byte) alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return data;
+    }
+
+    // Implementação original de processFile, mantida aqui só como referência
+    private static String legacyRot13(String input) {
+        StringBuilder result = new StringBuilder();
+        for (char c : input.toCharArray()) {
+            if (c >= 'a' && c <= 'z') {
+                result.append((char) (((c - 'a' + 13) % 26) + 'a'));
+            } else if (c >= 'A' && c <= 'Z') {
+                result.append((char) (((c - 'A' + 13) % 26) + 'A'));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static void branchRot13(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte c = data[i];
+            if (c >= 'a' && c <= 'z') {
+                data[i] = (byte) (((c - 'a' + 13) % 26) + 'a');
+            } else if (c >= 'A' && c <= 'Z') {
+                data[i] = (byte) (((c - 'A' + 13) % 26) + 'A');
+            }
+        }
+    }
+}
@@ -0,0 +1,3 @@
+cd "$(dirname "$0")"
+javac -sourcepath ../common -d . Rot13Benchmark.java
+java Rot13Benchmark "$@"
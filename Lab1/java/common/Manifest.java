@@ -0,0 +1,296 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Manifesto persistente dos arquivos já cifrados de um diretório.
+// Cada linha guarda estado, tamanho, mtime, hash do conteúdo e caminho relativo. O arquivo é um
+// diário: cada mudança é acrescentada ao fim (a última linha de um caminho vale) e, ao fechar,
+// ele é reescrito compacto. Assim uma execução interrompida não perde o que já foi feito.
+//
+// As linhas são gravadas em grupo: cada uma entra num lote em memória, e uma só escrita seguida
+// de fsync leva o lote inteiro ao disco. Só o PENDING precisa estar no disco antes de o arquivo
+// ser reescrito, então só markPending espera. Enquanto uma thread faz o fsync, as outras acumulam
+// o próximo lote, e a primeira que precisar esperar grava esse lote de uma vez. As linhas
+// CIPHERED vão junto com o lote seguinte ou no close(); perdê-las numa queda só faz o arquivo
+// aparecer como INTERRUPTED, nunca como cifrado sem estar.
+final class Manifest implements Closeable {
+    static final String FILE_NAME = ".rot13-manifest";
+
+    // Estados do arquivo: PENDING foi gravado antes de cifrar, CIPHERED depois
+    static final char PENDING = 'P';
+    static final char CIPHERED = 'C';
+
+    // Base do hash polinomial; ímpar para ser inversível módulo 2^64
+    private static final long HASH_BASE = 0x100000001B3L;
+
+    // Situação de um arquivo em relação ao manifesto
+    enum Status {
+        NEW,         // nunca cifrado, alterado ou com PENDING ainda intacto: precisa cifrar
+        UNCHANGED,   // mesmo tamanho e mtime do registro CIPHERED: pode pular sem ler
+        TOUCHED,     // mesmo tamanho, mtime diferente: conferir o hash antes de decidir
+        INTERRUPTED  // PENDING e atributos mudaram: a cifra parou no meio, não dá para saber o estado
+    }
+
+    static final class Entry {
+        final char state;
+        final long size;
+        final long modified;
+        final long hash;
+
+        Entry(char state, long size, long modified, long hash) {
+            this.state = state;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+
+    // Lote a partir do qual quem acrescenta uma linha já o grava, mesmo sem precisar esperar
+    private static final int MAX_BATCH_CHARS = 64 * 1024;
+
+    private final Path directory;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final FileChannel journal;
+
+    // Protegidos por batchLock: linhas ainda não gravadas, quantas já foram acrescentadas,
+    // quantas já estão no disco e se alguma thread está gravando agora
+    private final Object batchLock = new Object();
+    private StringBuilder batch = new StringBuilder();
+    private long appended;
+    private long durable;
+    private boolean writing;
+
+    private Manifest(Path directory) throws IOException {
+        this.directory = directory;
+        Path file = directory.resolve(FILE_NAME);
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", 5);
+                    if (fields.length < 5 || fields[0].length() != 1) {
+                        continue; // linha truncada por uma execução interrompida
+                    }
+                    try {
+                        entries.put(fields[4], new Entry(fields[0].charAt(0), Long.parseLong(fields[1]),
+                                Long.parseLong(fields[2]), Long.parseUnsignedLong(fields[3], 16)));
+                    } catch (NumberFormatException e) {
+                        // linha pela metade, deixada por uma queda no meio da escrita
+                    }
+                }
+            }
+        }
+        this.journal = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    static Manifest open(Path directory) throws IOException {
+        return new Manifest(directory);
+    }
+
+    static boolean isManifestFile(String name) {
+        return name.startsWith(FILE_NAME);
+    }
+
+    String key(Path file) {
+        return directory.relativize(file).toString();
+    }
+
+    Entry get(Path file) {
+        return entries.get(key(file));
+    }
+
+    // Classifica o arquivo só pelos atributos, sem ler o conteúdo
+    Status status(Path file, BasicFileAttributes attrs) {
+        Entry entry = get(file);
+        if (entry == null) {
+            return Status.NEW;
+        }
+        boolean sameSize = entry.size == attrs.size();
+        boolean sameTime = entry.modified == attrs.lastModifiedTime().toMillis();
+        if (entry.state == PENDING) {
+            return sameSize && sameTime ? Status.NEW : Status.INTERRUPTED;
+        }
+        if (!sameSize) {
+            return Status.NEW;
+        }
+        return sameTime ? Status.UNCHANGED : Status.TOUCHED;
+    }
+
+    // Para arquivos TOUCHED: se o conteúdo ainda é o que foi cifrado (só o mtime mudou), atualiza
+    // o registro com o novo mtime e devolve verdadeiro
+    boolean refreshIfContentUnchanged(Path file, FileChannel channel, int windowSize) throws IOException {
+        Entry entry = get(file);
+        if (entry == null || entry.state != CIPHERED || hash(channel, windowSize) != entry.hash) {
+            return false;
+        }
+        markCiphered(file, entry.hash);
+        return true;
+    }
+
+    // Marca o arquivo antes de reescrevê-lo, com os atributos de antes da cifra; só retorna
+    // quando a linha já está no disco
+    void markPending(Path file, BasicFileAttributes attrs) throws IOException {
+        awaitDurable(append(key(file), new Entry(PENDING, attrs.size(), attrs.lastModifiedTime().toMillis(), 0)));
+    }
+
+    // Registra o arquivo já cifrado com os atributos atuais e o hash do conteúdo gravado
+    void markCiphered(Path file, long hash) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long sequence = append(key(file), new Entry(CIPHERED, attrs.size(), attrs.lastModifiedTime().toMillis(), hash));
+        if (batchFull()) {
+            awaitDurable(sequence);
+        }
+    }
+
+    // Acrescenta a linha ao lote e devolve seu número de sequência
+    private long append(String key, Entry entry) throws IOException {
+        synchronized (batchLock) {
+            entries.put(key, entry);
+            writeEntry(batch, key, entry);
+            return ++appended;
+        }
+    }
+
+    private boolean batchFull() {
+        synchronized (batchLock) {
+            return batch.length() >= MAX_BATCH_CHARS;
+        }
+    }
+
+    // Espera a linha de número sequence chegar ao disco. Se ninguém estiver gravando, esta thread
+    // grava o lote inteiro, com as linhas das outras threads, e faz um só fsync; a escrita fica
+    // fora do lock, para as outras threads seguirem acumulando o próximo lote
+    private void awaitDurable(long sequence) throws IOException {
+        while (true) {
+            StringBuilder toWrite;
+            long upTo;
+            synchronized (batchLock) {
+                while (writing && durable < sequence) {
+                    try {
+                        batchLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrompido esperando o manifesto");
+                    }
+                }
+                if (durable >= sequence) {
+                    return;
+                }
+                toWrite = batch;
+                upTo = appended;
+                batch = new StringBuilder();
+                writing = true;
+            }
+
+            boolean done = false;
+            try {
+                ByteBuffer bytes = StandardCharsets.UTF_8.encode(toWrite.toString());
+                while (bytes.hasRemaining()) {
+                    journal.write(bytes);
+                }
+                journal.force(false);
+                done = true;
+            } finally {
+                synchronized (batchLock) {
+                    writing = false;
+                    if (done) {
+                        durable = upTo;
+                    } else {
+                        // Devolve as linhas ao lote; se parte delas chegou ao disco, repetir não muda nada
+                        batch = toWrite.append(batch);
+                    }
+                    batchLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    // Grava o que restou no lote e reescreve o manifesto só com a última linha de cada caminho,
+    // trocando o arquivo de uma vez. O arquivo novo vai ao disco antes da troca, e a troca antes
+    // de retornar; senão uma queda poderia deixar o nome novo apontando para um arquivo vazio
+    @Override
+    public synchronized void close() throws IOException {
+        long last;
+        synchronized (batchLock) {
+            last = appended;
+        }
+        awaitDurable(last);
+        journal.close();
+        Path file = directory.resolve(FILE_NAME);
+        Path temp = directory.resolve(FILE_NAME + ".tmp");
+        StringBuilder compacted = new StringBuilder();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            writeEntry(compacted, e.getKey(), e.getValue());
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(compacted));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+    }
+
+    // fsync do diretório, que torna a troca de nome durável
+    private void forceDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // o Windows não deixa abrir diretórios; lá a troca fica a cargo do sistema
+        }
+    }
+
+    private static void writeEntry(Appendable writer, String key, Entry entry) throws IOException {
+        writer.append(entry.state + "\t" + entry.size + "\t" + entry.modified + "\t"
+                + Long.toHexString(entry.hash) + "\t" + key + "\n");
+    }
+
+    // Hash polinomial dos bytes entre position e limit, que estão na posição fileOffset do arquivo.
+    // Somar os hashes de janelas disjuntas dá o hash do arquivo inteiro, em qualquer ordem e com
+    // qualquer divisão em janelas.
+    static long hash(long fileOffset, ByteBuffer window) {
+        long power = pow(HASH_BASE, fileOffset);
+        long hash = 0;
+        for (int i = window.position(); i < window.limit(); i++) {
+            hash += ((window.get(i) & 0xFF) + 1) * power;
+            power *= HASH_BASE;
+        }
+        return hash;
+    }
+
+    // Hash do conteúdo atual do arquivo, lido em janelas de windowSize bytes
+    static long hash(FileChannel channel, int windowSize) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(windowSize);
+        long position = 0;
+        long hash = 0;
+        int read;
+        while ((read = channel.read(window, position)) > 0) {
+            window.flip();
+            hash += hash(position, window);
+            position += read;
+            window.clear();
+        }
+        return hash;
+    }
+
+    private static long pow(long base, long exponent) {
+        long result = 1;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+            exponent >>= 1;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,41 @@
+import java.nio.ByteBuffer;
+
+// Kernel ROT13 compartilhado pelas versões serial e concorrente.
+// Usa uma tabela de 256 posições: um acesso por byte, sem desvio, módulo ou alocação.
+final class Rot13 {
+    private static final byte[] TABLE = new byte[256];
+
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            if (i >= 'a' && i <= 'z') {
+                TABLE[i] = (byte) (((i - 'a' + 13) % 26) + 'a');
+            } else if (i >= 'A' && i <= 'Z') {
+                TABLE[i] = (byte) (((i - 'A' + 13) % 26) + 'A');
+            } else {
+                TABLE[i] = (byte) i;
+            }
+        }
+    }
+
+    private Rot13() {
+    }
+
+    // Cifra data[from, to) no próprio array
+    static void apply(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            data[i] = TABLE[data[i] & 0xFF];
+        }
+    }
+
+    // Cifra os bytes entre position e limit sem mexer na posição do buffer
+    static void apply(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            int offset = buffer.arrayOffset();
+            apply(buffer.array(), offset + buffer.position(), offset + buffer.limit());
+            return;
+        }
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            buffer.put(i, TABLE[buffer.get(i) & 0xFF]);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Pipeline em estágios para cifrar uma árvore de diretórios inteira:
+//
+//   varredura (árvore, em paralelo) -> leitura (E/S) -> ROT13 (CPU) -> escrita (E/S)
+//
+// Os estágios são ligados por filas limitadas e os arquivos nunca são listados todos em memória.
+// Cada arquivo é lido em blocos de tamanho fixo que vêm de um pool com número fixo de buffers,
+// então a memória usada não depende nem do número nem do tamanho dos arquivos. Blocos de um mesmo
+// arquivo grande são cifrados em paralelo pelas threads de CPU.
+final class FilePipeline {
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final int QUEUE_CAPACITY = 64;
+    // Tempo que uma thread de varredura espera por um diretório antes de conferir se a árvore acabou
+    private static final long SCAN_POLL_MILLIS = 10;
+
+    // Marca de fim de fila
+    private static final Path END_OF_FILES = Paths.get("");
+    private static final Chunk END_OF_CHUNKS = new Chunk(null, 0, null);
+
+    private final Path root;
+    private final Manifest manifest;
+    private final int scanThreads;
+    private final int ioThreads;
+    private final int cpuThreads;
+    private final Semaphore openFiles;
+
+    private final BlockingQueue<Path> directories = new LinkedBlockingQueue<>();
+    private final AtomicInteger pendingDirectories = new AtomicInteger();
+    private final BlockingQueue<Path> files = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<Chunk> toTransform = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<Chunk> toWrite = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<ByteBuffer> bufferPool;
+
+    private final AtomicLong processedFiles = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong processedBytes = new AtomicLong();
+
+    FilePipeline(Path root, Manifest manifest, int scanThreads, int ioThreads, int cpuThreads, int maxOpenFiles) {
+        this.root = root;
+        this.manifest = manifest;
+        this.scanThreads = scanThreads;
+        this.ioThreads = ioThreads;
+        this.cpuThreads = cpuThreads;
+        this.openFiles = new Semaphore(maxOpenFiles);
+
+        // Buffers suficientes para encher as duas filas e ocupar todas as threads de CPU e de escrita
+        int buffers = 2 * QUEUE_CAPACITY + cpuThreads + 2 * ioThreads;
+        this.bufferPool = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            bufferPool.add(ByteBuffer.allocate(CHUNK_SIZE));
+        }
+    }
+
+    // Roda todos os estágios e só volta quando o último bloco foi escrito
+    void run() throws InterruptedException {
+        long start = System.nanoTime();
+
+        pendingDirectories.set(1);
+        directories.add(root);
+
+        List<Thread> scanners = startStage("scan", scanThreads, this::scan);
+        List<Thread> readers = startStage("read", ioThreads, this::read);
+        List<Thread> transformers = startStage("rot13", cpuThreads, this::transform);
+        List<Thread> writers = startStage("write", ioThreads, this::write);
+
+        // Cada estágio só recebe o fim de fila depois que o anterior terminou
+        joinAll(scanners);
+        for (int i = 0; i < ioThreads; i++) {
+            files.put(END_OF_FILES);
+        }
+        joinAll(readers);
+        for (int i = 0; i < cpuThreads; i++) {
+            toTransform.put(END_OF_CHUNKS);
+        }
+        joinAll(transformers);
+        for (int i = 0; i < ioThreads; i++) {
+            toWrite.put(END_OF_CHUNKS);
+        }
+        joinAll(writers);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Processados %d arquivos (%d sem alterações) em %.3f s (%.1f arquivos/s, %.1f MB/s)%n",
+                processedFiles.get(), skippedFiles.get(), seconds,
+                processedFiles.get() / seconds, processedBytes.get() / seconds / (1024 * 1024));
+    }
+
+    private interface StageLoop {
+        void run() throws InterruptedException;
+    }
+
+    private static List<Thread> startStage(String name, int count, StageLoop loop) {
+        List<Thread> threads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    loop.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, name + "-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    private static void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    // Estágio 1: percorre a árvore; subdiretórios voltam para a fila de diretórios e são
+    // divididos entre as threads de varredura, arquivos seguem para a leitura
+    private void scan() throws InterruptedException {
+        while (true) {
+            Path directory = directories.poll(SCAN_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (directory == null) {
+                if (pendingDirectories.get() == 0) {
+                    return;
+                }
+                continue;
+            }
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        pendingDirectories.incrementAndGet();
+                        directories.add(entry);
+                    } else if (Files.isRegularFile(entry) && !Manifest.isManifestFile(entry.getFileName().toString())) {
+                        files.put(entry);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                System.out.println("Erro ao listar o diretório " + directory + ": " + e.getMessage());
+            } finally {
+                pendingDirectories.decrementAndGet();
+            }
+        }
+    }
+
+    // Estágio 2: abre cada arquivo que precisa ser cifrado e o quebra em blocos
+    private void read() throws InterruptedException {
+        while (true) {
+            Path path = files.take();
+            if (path == END_OF_FILES) {
+                return;
+            }
+            openFiles.acquire();
+            FileJob job = open(path);
+            if (job == null) {
+                openFiles.release();
+                continue;
+            }
+
+            try {
+                long position = 0;
+                while (true) {
+                    ByteBuffer buffer = bufferPool.take();
+                    buffer.clear();
+                    int read = job.channel.read(buffer, position);
+                    if (read <= 0) {
+                        bufferPool.put(buffer);
+                        break;
+                    }
+                    buffer.flip();
+                    job.pendingChunks.incrementAndGet();
+                    toTransform.put(new Chunk(job, position, buffer));
+                    position += read;
+                }
+            } catch (IOException e) {
+                job.fail("ler", e);
+            } finally {
+                // Libera a referência da própria leitura; o último bloco escrito fecha o arquivo
+                job.chunkDone();
+            }
+        }
+    }
+
+    // Confere o manifesto e abre o arquivo; devolve null quando ele não precisa ser cifrado
+    private FileJob open(Path path) {
+        String name = root.relativize(path).toString();
+        FileChannel channel = null;
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            Manifest.Status status = manifest.status(path, attrs);
+            if (status == Manifest.Status.UNCHANGED) {
+                skippedFiles.incrementAndGet();
+                return null;
+            }
+            if (status == Manifest.Status.INTERRUPTED) {
+                System.out.println("Erro: o arquivo " + name + " foi interrompido numa execução anterior"
+                        + " e pode estar cifrado pela metade; confira-o e remova sua linha do manifesto.");
+                return null;
+            }
+
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (status == Manifest.Status.TOUCHED && manifest.refreshIfContentUnchanged(path, channel, CHUNK_SIZE)) {
+                skippedFiles.incrementAndGet();
+                channel.close();
+                return null;
+            }
+
+            System.out.println("Processing file: " + name);
+            manifest.markPending(path, attrs);
+            return new FileJob(path, name, channel);
+        } catch (IOException e) {
+            System.out.println("Erro ao processar o arquivo " + name + ": " + e.getMessage());
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // o erro original já foi informado
+                }
+            }
+            return null;
+        }
+    }
+
+    // Estágio 3: só CPU, sem E/S
+    private void transform() throws InterruptedException {
+        while (true) {
+            Chunk chunk = toTransform.take();
+            if (chunk == END_OF_CHUNKS) {
+                return;
+            }
+            Rot13.apply(chunk.data);
+            chunk.job.hash.addAndGet(Manifest.hash(chunk.position, chunk.data));
+            toWrite.put(chunk);
+        }
+    }
+
+    // Estágio 4: grava cada bloco de volta na mesma posição e devolve o buffer ao pool
+    private void write() throws InterruptedException {
+        while (true) {
+            Chunk chunk = toWrite.take();
+            if (chunk == END_OF_CHUNKS) {
+                return;
+            }
+            try {
+                long position = chunk.position;
+                while (chunk.data.hasRemaining()) {
+                    position += chunk.job.channel.write(chunk.data, position);
+                }
+                processedBytes.addAndGet(position - chunk.position);
+            } catch (IOException e) {
+                chunk.job.fail("escrever", e);
+            } finally {
+                bufferPool.put(chunk.data);
+                chunk.job.chunkDone();
+            }
+        }
+    }
+
+    private static final class Chunk {
+        final FileJob job;
+        final long position;
+        final ByteBuffer data;
+
+        Chunk(FileJob job, long position, ByteBuffer data) {
+            this.job = job;
+            this.position = position;
+            this.data = data;
+        }
+    }
+
+    // Um arquivo aberto com blocos ainda em trânsito pelo pipeline
+    private final class FileJob {
+        final Path path;
+        final String name;
+        final FileChannel channel;
+        final AtomicLong hash = new AtomicLong();
+        // Blocos ainda não escritos, mais um enquanto a leitura não termina
+        final AtomicInteger pendingChunks = new AtomicInteger(1);
+        volatile boolean failed;
+
+        FileJob(Path path, String name, FileChannel channel) {
+            this.path = path;
+            this.name = name;
+            this.channel = channel;
+        }
+
+        void fail(String operation, IOException e) {
+            failed = true;
+            System.out.println("Erro ao " + operation + " o arquivo " + name + ": " + e.getMessage());
+        }
+
+        void chunkDone() {
+            if (pendingChunks.decrementAndGet() > 0) {
+                return;
+            }
+            try {
+                channel.close();
+                // Se algo falhou o registro fica PENDING e a próxima execução avisa em vez de cifrar de novo
+                if (!failed) {
+                    manifest.markCiphered(path, hash.get());
+                    processedFiles.incrementAndGet();
+                }
+            } catch (IOException e) {
+                System.out.println("Erro ao finalizar o arquivo " + name + ": " + e.getMessage());
+            } finally {
+                openFiles.release();
+            }
+        }
+    }
+}
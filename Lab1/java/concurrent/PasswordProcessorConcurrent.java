@@ -1,11 +1,34 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
-import java.util.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 public class PasswordProcessorConcurrent {
+    // Limite padrão de arquivos abertos ao mesmo tempo
+    private static final int DEFAULT_MAX_OPEN_FILES = 256;
+    // Tamanho da janela lida e reescrita de cada vez
+    private static final int WINDOW_SIZE = 64 * 1024;
+    // Arquivos a partir deste tamanho são divididos em faixas processadas em paralelo
+    private static final long DEFAULT_SPLIT_THRESHOLD = 64L * 1024 * 1024;
+    // Tamanho máximo de uma faixa antes de ser dividida de novo no fork/join
+    private static final long SPLIT_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    // Threads de E/S padrão do modo pipeline (cada uma para leitura e para escrita)
+    private static final int DEFAULT_IO_THREADS = 4;
+
     public static void main(String[] args) {
+        if (args.length >= 2 && args[0].equals("--pipeline")) {
+            runPipeline(args);
+            return;
+        }
         if (args.length < 1) {
-            System.out.println("Uso: java PasswordProcessorConcurrent <caminho_do_diretorio>");
+            System.out.println("Uso: java PasswordProcessorConcurrent <caminho_do_diretorio> [num_threads] [max_arquivos_abertos] [limite_divisao_bytes]");
+            System.out.println("     java PasswordProcessorConcurrent --pipeline <caminho_do_diretorio> [threads_cpu] [threads_es] [max_arquivos_abertos]");
             return;
         }
 
@@ -17,57 +40,211 @@ public class PasswordProcessorConcurrent {
             return;
         }
 
-        File[] files = directory.listFiles((dir, name) -> name.endsWith(""));
-        if (files == null) {
-            System.out.println("Erro ao listar arquivos no diretório.");
+        // num_threads <= 0 (padrão) usa threads virtuais, quando a JVM oferece
+        int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        int maxOpenFiles = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_OPEN_FILES;
+        if (maxOpenFiles < 1) {
+            System.out.println("Erro: max_arquivos_abertos deve ser maior que zero.");
+            return;
+        }
+        long splitThreshold = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SPLIT_THRESHOLD;
+
+        Manifest manifest;
+        try {
+            manifest = Manifest.open(directory.toPath());
+        } catch (IOException e) {
+            System.out.println("Erro ao acessar o manifesto: " + e.getMessage());
+            return;
+        }
+
+        Semaphore openFiles = new Semaphore(maxOpenFiles);
+        long start = System.nanoTime();
+
+        ExecutorService executor = newExecutor(numThreads, maxOpenFiles);
+        // Percorre a árvore inteira sob demanda, como a versão serial, e entrega cada arquivo
+        // ao executor assim que o encontra; o próprio manifesto fica no diretório e não deve ser cifrado
+        // Só contam os arquivos cifrados de fato, como no modo --pipeline
+        AtomicLong processedFiles = new AtomicLong();
+        AtomicLong skippedFiles = new AtomicLong();
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            Iterator<Path> regularFiles = paths.filter(Files::isRegularFile)
+                    .filter(path -> !Manifest.isManifestFile(path.getFileName().toString()))
+                    .iterator();
+            while (regularFiles.hasNext()) {
+                File file = regularFiles.next().toFile();
+                executor.execute(() -> {
+                    openFiles.acquireUninterruptibly();
+                    try {
+                        processFile(file, manifest, splitThreshold, processedFiles, skippedFiles);
+                    } finally {
+                        openFiles.release();
+                    }
+                });
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Erro ao percorrer o diretório: " + e.getMessage());
+        }
+
+        // Espera todos os arquivos terminarem antes de medir o tempo
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            System.out.println("Processamento interrompido.");
+            return;
+        } finally {
+            try {
+                manifest.close();
+            } catch (IOException e) {
+                System.out.println("Erro ao gravar o manifesto: " + e.getMessage());
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Processados %d arquivos (%d sem alterações) em %.3f s (%.1f arquivos/s)%n",
+                processedFiles.get(), skippedFiles.get(), seconds, processedFiles.get() / seconds);
+    }
+
+    // Percorre a árvore inteira (com subdiretórios) em estágios separados de E/S e CPU; ver FilePipeline
+    private static void runPipeline(String[] args) {
+        Path root = Paths.get(args[1]);
+        if (!Files.isDirectory(root)) {
+            System.out.println("Erro: Diretório não encontrado ou inválido.");
+            return;
+        }
+
+        int cpuThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int ioThreads = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_IO_THREADS;
+        int maxOpenFiles = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_MAX_OPEN_FILES;
+        if (cpuThreads < 1 || ioThreads < 1 || maxOpenFiles < 1) {
+            System.out.println("Erro: os números de threads e de arquivos abertos devem ser maiores que zero.");
             return;
         }
 
-        for (File file : files) {
-            Thread myThread = new Thread (()->processFile(file));
-            myThread.start();
-            
+        try (Manifest manifest = Manifest.open(root)) {
+            new FilePipeline(root, manifest, ioThreads, ioThreads, cpuThreads, maxOpenFiles).run();
+        } catch (IOException e) {
+            System.out.println("Erro ao acessar o manifesto: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Processamento interrompido.");
+        }
+    }
+
+    private static ExecutorService newExecutor(int numThreads, int maxOpenFiles) {
+        if (numThreads > 0) {
+            return Executors.newFixedThreadPool(numThreads);
+        }
+        // Threads virtuais só existem a partir do Java 21; em JVMs antigas cai num pool limitado
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int poolSize = Math.min(maxOpenFiles, Runtime.getRuntime().availableProcessors() * 4);
+            return Executors.newFixedThreadPool(poolSize);
         }
     }
 
+    private static void processFile(File file, Manifest manifest, long splitThreshold,
+                                    AtomicLong processedFiles, AtomicLong skippedFiles) {
+        Path path = file.toPath();
 
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            Manifest.Status status = manifest.status(path, attrs);
+            if (status == Manifest.Status.UNCHANGED) {
+                System.out.println("Skipping file: " + file.getName());
+                skippedFiles.incrementAndGet();
+                return;
+            }
+            if (status == Manifest.Status.INTERRUPTED) {
+                System.out.println("Erro: o arquivo " + file.getName() + " foi interrompido numa execução anterior"
+                        + " e pode estar cifrado pela metade; confira-o e remova sua linha do manifesto.");
+                return;
+            }
 
-    private static void processFile(File file) {
-        System.out.println("Processing file: " + file.getName());
-        List<String> obfuscatedLines = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (status == Manifest.Status.TOUCHED && manifest.refreshIfContentUnchanged(path, channel, WINDOW_SIZE)) {
+                    System.out.println("Skipping file: " + file.getName());
+                    skippedFiles.incrementAndGet();
+                    return;
+                }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                obfuscatedLines.add(rot13(line)); // Adiciona a linha ofuscada à lista
+                System.out.println("Processing file: " + file.getName());
+                manifest.markPending(path, attrs);
+                long size = channel.size();
+                long hash;
+                if (size >= splitThreshold) {
+                    // O ROT13 trata cada byte sozinho, então as faixas não precisam de tratamento nas bordas
+                    hash = ForkJoinPool.commonPool().invoke(new RangeTask(channel, 0, size));
+                } else {
+                    hash = transformRange(channel, 0, size);
+                }
+                manifest.markCiphered(path, hash);
+                processedFiles.incrementAndGet();
             }
+        } catch (UncheckedIOException e) {
+            System.out.println("Erro ao processar o arquivo " + file.getName() + ": " + e.getCause().getMessage());
         } catch (IOException e) {
-            System.out.println("Erro ao ler o arquivo " + file.getName() + ": " + e.getMessage());
-            return;
+            System.out.println("Erro ao processar o arquivo " + file.getName() + ": " + e.getMessage());
         }
+    }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-            for (String obfuscatedLine : obfuscatedLines) {
-                writer.write(obfuscatedLine);
-                writer.newLine();
+    // Lê, cifra e reescreve no mesmo lugar os bytes de [from, to), uma janela fixa por vez.
+    // Devolve o hash do trecho cifrado (ver Manifest.hash)
+    private static long transformRange(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate((int) Math.min(WINDOW_SIZE, to - from));
+        long position = from;
+        long hash = 0;
+        while (position < to) {
+            window.clear();
+            window.limit((int) Math.min(window.capacity(), to - position));
+            if (channel.read(window, position) <= 0) {
+                break; // arquivo encolheu durante o processamento
+            }
+            window.flip();
+            Rot13.apply(window);
+            hash += Manifest.hash(position, window);
+            // Reescreve a janela no mesmo lugar, preservando os demais bytes (inclusive quebras de linha)
+            while (window.hasRemaining()) {
+                position += channel.write(window, position);
             }
-        } catch (IOException e) {
-            System.out.println("Erro ao escrever no arquivo " + file.getName() + ": " + e.getMessage());
         }
+        return hash;
     }
 
-    private static String rot13(String input) {
-        StringBuilder result = new StringBuilder();
-        for (char c : input.toCharArray()) {
-            if (c >= 'a' && c <= 'z') {
-                result.append((char) (((c - 'a' + 13) % 26) + 'a'));
-            } else if (c >= 'A' && c <= 'Z') {
-                result.append((char) (((c - 'A' + 13) % 26) + 'A'));
-            } else {
-                result.append(c);
+    // Divide [from, to) ao meio até as faixas caberem em SPLIT_CHUNK_SIZE; leituras e escritas
+    // posicionais do FileChannel podem ser feitas por várias threads ao mesmo tempo
+    private static class RangeTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long from;
+        private final long to;
+
+        RangeTask(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= SPLIT_CHUNK_SIZE) {
+                try {
+                    return transformRange(channel, from, to);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
             }
+            long middle = from + (to - from) / 2;
+            RangeTask left = new RangeTask(channel, from, middle);
+            left.fork();
+            long right = new RangeTask(channel, middle, to).compute();
+            // Os hashes das faixas se somam, qualquer que seja a divisão
+            return left.join() + right;
         }
-        return result.toString();
     }
 }
 
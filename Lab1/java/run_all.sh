@@ -1,7 +1,6 @@
 cd serial
-javac PasswordProcessorSerial.java  # Adicione a extensão do arquivo .java
+javac -sourcepath .:../common -d . PasswordProcessorSerial.java  # Rot13 e Manifest ficam em ../common
 time java PasswordProcessorSerial ../../dataset
 cd ../concurrent
-javac PasswordProcessorConcurrent.java  # Adicione a extensão do arquivo .java
+javac -sourcepath .:../common -d . PasswordProcessorConcurrent.java  # Rot13 e Manifest ficam em ../common
 time java PasswordProcessorConcurrent ../../dataset
-
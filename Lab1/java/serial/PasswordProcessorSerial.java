@@ -1,8 +1,14 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
-import java.util.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.stream.Stream;
 
 public class PasswordProcessorSerial {
+    // Tamanho da janela lida e reescrita de cada vez
+    private static final int WINDOW_SIZE = 64 * 1024;
+
     public static void main(String[] args) {
         if (args.length < 1) {
             System.out.println("Uso: java PasswordProcessorSerial <caminho_do_diretorio>");
@@ -17,53 +23,60 @@ public class PasswordProcessorSerial {
             return;
         }
 
-        File[] files = directory.listFiles((dir, name) -> name.endsWith(""));
-        if (files == null) {
-            System.out.println("Erro ao listar arquivos no diretório.");
-            return;
-        }
-
-        for (File file : files) {
-            processFile(file);
+        // Percorre a árvore inteira sob demanda, sem listar todos os arquivos antes;
+        // o próprio manifesto fica no diretório e não deve ser cifrado
+        try (Manifest manifest = Manifest.open(directory.toPath());
+             Stream<Path> paths = Files.walk(directory.toPath())) {
+            paths.filter(Files::isRegularFile)
+                 .filter(path -> !Manifest.isManifestFile(path.getFileName().toString()))
+                 .forEach(path -> processFile(path.toFile(), manifest));
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Erro ao percorrer o diretório: " + e.getMessage());
         }
     }
 
-    private static void processFile(File file) {
-        System.out.println("Processing file: " + file.getName());
-        List<String> obfuscatedLines = new ArrayList<>();
+    private static void processFile(File file, Manifest manifest) {
+        Path path = file.toPath();
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                obfuscatedLines.add(rot13(line)); // Adiciona a linha ofuscada à lista
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            Manifest.Status status = manifest.status(path, attrs);
+            if (status == Manifest.Status.UNCHANGED) {
+                System.out.println("Skipping file: " + file.getName());
+                return;
             }
-        } catch (IOException e) {
-            System.out.println("Erro ao ler o arquivo " + file.getName() + ": " + e.getMessage());
-            return;
-        }
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-            for (String obfuscatedLine : obfuscatedLines) {
-                writer.write(obfuscatedLine);
-                writer.newLine();
+            if (status == Manifest.Status.INTERRUPTED) {
+                System.out.println("Erro: o arquivo " + file.getName() + " foi interrompido numa execução anterior"
+                        + " e pode estar cifrado pela metade; confira-o e remova sua linha do manifesto.");
+                return;
             }
-        } catch (IOException e) {
-            System.out.println("Erro ao escrever no arquivo " + file.getName() + ": " + e.getMessage());
-        }
-    }
 
-    private static String rot13(String input) {
-        StringBuilder result = new StringBuilder();
-        for (char c : input.toCharArray()) {
-            if (c >= 'a' && c <= 'z') {
-                result.append((char) (((c - 'a' + 13) % 26) + 'a'));
-            } else if (c >= 'A' && c <= 'Z') {
-                result.append((char) (((c - 'A' + 13) % 26) + 'A'));
-            } else {
-                result.append(c);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (status == Manifest.Status.TOUCHED && manifest.refreshIfContentUnchanged(path, channel, WINDOW_SIZE)) {
+                    System.out.println("Skipping file: " + file.getName());
+                    return;
+                }
+
+                System.out.println("Processing file: " + file.getName());
+                manifest.markPending(path, attrs);
+                // Uma janela fixa por arquivo: o uso de heap não depende do tamanho do arquivo
+                ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+                long position = 0;
+                long hash = 0;
+                while (channel.read(window, position) > 0) {
+                    window.flip();
+                    Rot13.apply(window);
+                    hash += Manifest.hash(position, window);
+                    // Reescreve a janela no mesmo lugar, preservando os demais bytes (inclusive quebras de linha)
+                    while (window.hasRemaining()) {
+                        position += channel.write(window, position);
+                    }
+                    window.clear();
+                }
+                manifest.markCiphered(path, hash);
             }
+        } catch (IOException e) {
+            System.out.println("Erro ao processar o arquivo " + file.getName() + ": " + e.getMessage());
         }
-        return result.toString();
     }
 }
-
@@ -0,0 +1,258 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+
+/**
+ * Applies the mean filter to many images, with decoding, filtering and encoding
+ * running as separate pipelined stages.
+ *
+ * <p>ImageIO decodes and encodes each image on a single thread, and for typical
+ * photos that takes longer than the filter itself. Here each stage has its own
+ * threads, and the stages are joined by bounded queues, so one image is decoded
+ * while another is filtered and a third is encoded. The queues also cap how many
+ * decoded images are in memory at once. The filter stage shares one ForkJoinPool
+ * between the images it is working on, so idle workers steal tiles from any of them.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>
+ * {@code
+ * BatchMeanFilter batch = new BatchMeanFilter(7, 4, 8, 4);
+ * batch.run(List.of(Path.of("photos")), Path.of("filtered"));
+ * }
+ * </pre>
+ */
+public class BatchMeanFilter {
+    private static final String OUTPUT_FORMAT = "jpg";
+
+    // End-of-queue markers, compared by identity
+    private static final Path END_PATH = Path.of("");
+    private static final Job END = new Job(null, null);
+
+    private final FilterKernel kernel;
+    private final int decodeThreads;
+    private final int filterThreads;
+    private final int encodeThreads;
+
+    /**
+     * @param kernelSize    Size of mean kernel
+     * @param decodeThreads Threads reading and decoding images
+     * @param filterThreads Worker threads of the filter pool
+     * @param encodeThreads Threads encoding and writing images
+     */
+    public BatchMeanFilter(int kernelSize, int decodeThreads, int filterThreads, int encodeThreads) {
+        this(FilterKernel.mean(kernelSize), decodeThreads, filterThreads, encodeThreads);
+    }
+
+    /**
+     * @param kernel        Filter to apply to every image
+     * @param decodeThreads Threads reading and decoding images
+     * @param filterThreads Worker threads of the filter pool
+     * @param encodeThreads Threads encoding and writing images
+     */
+    public BatchMeanFilter(FilterKernel kernel, int decodeThreads, int filterThreads, int encodeThreads) {
+        if (decodeThreads < 1 || filterThreads < 1 || encodeThreads < 1) {
+            throw new IllegalArgumentException("Every stage needs at least one thread");
+        }
+        this.kernel = kernel;
+        this.decodeThreads = decodeThreads;
+        this.filterThreads = filterThreads;
+        this.encodeThreads = encodeThreads;
+    }
+
+    /**
+     * Filters every image given, or found directly inside the given directories,
+     * into outputDir as a JPEG with the same base name. Inputs whose base names
+     * clash, such as photo.png and photo.jpg or a/x.png and b/x.png, keep their
+     * extension or get a number instead of overwriting each other; each such
+     * rename is reported on stderr.
+     *
+     * @param inputs    Image files and/or directories of images
+     * @param outputDir Directory for the filtered images; created if missing
+     * @return Number of images written
+     * @throws IOException          If outputDir cannot be created
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public long run(List<Path> inputs, Path outputDir) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        long start = System.nanoTime();
+
+        // Each queue holds about two images per consumer thread
+        BlockingQueue<Path> toDecode = new ArrayBlockingQueue<>(2 * decodeThreads);
+        BlockingQueue<Job> toFilter = new ArrayBlockingQueue<>(2 * filterThreads);
+        BlockingQueue<Job> toEncode = new ArrayBlockingQueue<>(2 * encodeThreads);
+        AtomicLong written = new AtomicLong();
+        AtomicLong pixels = new AtomicLong();
+        ForkJoinPool pool = new ForkJoinPool(filterThreads);
+        // Output file name of every input, chosen by the listing thread before it is queued
+        Map<Path, String> outputNames = new ConcurrentHashMap<>();
+        Set<String> takenNames = new HashSet<>();
+
+        List<Thread> decoders = startStage("decode", decodeThreads, () -> {
+            for (Path path = toDecode.take(); path != END_PATH; path = toDecode.take()) {
+                try {
+                    BufferedImage image = ImageIO.read(path.toFile());
+                    if (image == null) {
+                        System.err.println("Skipping " + path + ": unsupported image format");
+                        continue;
+                    }
+                    toFilter.put(new Job(path, image));
+                } catch (IOException e) {
+                    System.err.println("Error reading " + path + ": " + e.getMessage());
+                } catch (RuntimeException e) {
+                    // A corrupt image can make a decoder throw anything; one bad file must not
+                    // stop the stage, or the listing thread would block on the full queue
+                    System.err.println("Error decoding " + path + ": " + e);
+                }
+            }
+        });
+        // Several feeders keep the pool busy with more than one image at a time
+        List<Thread> filters = startStage("filter", filterThreads, () -> {
+            for (Job job = toFilter.take(); job != END; job = toFilter.take()) {
+                BufferedImage filtered;
+                try {
+                    filtered = ImageMeanFilter.filter(job.image, kernel, pool,
+                        ImageMeanFilter.DEFAULT_TILE_SIZE, null);
+                } catch (RuntimeException e) {
+                    System.err.println("Error filtering " + job.path + ": " + e);
+                    continue;
+                }
+                toEncode.put(new Job(job.path, filtered));
+            }
+        });
+        List<Thread> encoders = startStage("encode", encodeThreads, () -> {
+            for (Job job = toEncode.take(); job != END; job = toEncode.take()) {
+                File output = outputDir.resolve(outputNames.get(job.path)).toFile();
+                try {
+                    ImageIO.write(job.image, OUTPUT_FORMAT, output);
+                    written.incrementAndGet();
+                    pixels.addAndGet((long) job.image.getWidth() * job.image.getHeight());
+                } catch (IOException e) {
+                    System.err.println("Error writing " + output + ": " + e.getMessage());
+                } catch (RuntimeException e) {
+                    System.err.println("Error encoding " + output + ": " + e);
+                }
+            }
+        });
+
+        try {
+            // The calling thread lists the inputs, so directories are never read into memory whole
+            for (Path input : inputs) {
+                if (Files.isDirectory(input)) {
+                    try (DirectoryStream<Path> entries = Files.newDirectoryStream(input)) {
+                        for (Path entry : entries) {
+                            if (Files.isRegularFile(entry)) {
+                                queue(entry, toDecode, outputNames, takenNames);
+                            }
+                        }
+                    }
+                } else {
+                    queue(input, toDecode, outputNames, takenNames);
+                }
+            }
+        } finally {
+            // Each stage receives its end markers only once the previous one is done
+            for (int i = 0; i < decodeThreads; i++) {
+                toDecode.put(END_PATH);
+            }
+            joinAll(decoders);
+            for (int i = 0; i < filterThreads; i++) {
+                toFilter.put(END);
+            }
+            joinAll(filters);
+            pool.shutdown();
+            for (int i = 0; i < encodeThreads; i++) {
+                toEncode.put(END);
+            }
+            joinAll(encoders);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d images in %.3f s: %.2f images/s, %.1f Mpixels/s (decode %d, filter %d, encode %d threads)%n",
+            written.get(), seconds, written.get() / seconds, pixels.get() / seconds / 1e6,
+            decodeThreads, filterThreads, encodeThreads);
+        return written.get();
+    }
+
+    /**
+     * Picks an output name no earlier input has taken and queues the input for
+     * decoding; an input given twice is only filtered once
+     */
+    private static void queue(Path input, BlockingQueue<Path> toDecode, Map<Path, String> outputNames,
+                              Set<String> takenNames) throws InterruptedException {
+        Path key = input.toAbsolutePath().normalize();
+        if (outputNames.containsKey(key)) {
+            System.err.println("Skipping " + input + ": given more than once");
+            return;
+        }
+        String name = baseName(input) + "." + OUTPUT_FORMAT;
+        if (!takenNames.add(name)) {
+            String wanted = name;
+            name = input.getFileName() + "." + OUTPUT_FORMAT;
+            for (int copy = 2; !takenNames.add(name); copy++) {
+                name = baseName(input) + "-" + copy + "." + OUTPUT_FORMAT;
+            }
+            System.err.println("Writing " + input + " as " + name + ": " + wanted + " is already taken");
+        }
+        outputNames.put(key, name);
+        toDecode.put(key);
+    }
+
+    private static String baseName(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private interface StageLoop {
+        void run() throws InterruptedException;
+    }
+
+    private static List<Thread> startStage(String name, int count, StageLoop loop) {
+        List<Thread> threads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    loop.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, name + "-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    private static void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * An image moving between stages, with the path it came from
+     */
+    private static final class Job {
+        final Path path;
+        final BufferedImage image;
+
+        Job(Path path, BufferedImage image) {
+            this.path = path;
+            this.image = image;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * General square convolution, for kernels that are not separable (sharpen,
+ * edge detection, custom blurs). Costs size * size multiplications per pixel.
+ * 
+ * <p>Near the border the in-bounds weights are scaled up to the kernel's total
+ * weight, so a blur keeps its brightness. Kernels whose weights add up to zero
+ * are applied as they are. Results are clamped to [0, 255].</p>
+ */
+final class ConvolutionKernel implements FilterKernel {
+    private final int size;
+    private final int radius;
+    private final float[] weights;
+    private final float total;
+
+    /**
+     * @param weights Row-major size x size weights
+     * @param size    Kernel edge, odd
+     */
+    ConvolutionKernel(double[] weights, int size) {
+        if (size % 2 == 0 || weights.length != size * size) {
+            throw new IllegalArgumentException("Expected " + size + "x" + size + " weights with an odd size");
+        }
+        this.size = size;
+        this.radius = size / 2;
+        this.weights = new float[weights.length];
+        float sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            this.weights[i] = (float) weights[i];
+            sum += this.weights[i];
+        }
+        this.total = sum;
+    }
+
+    @Override
+    public int radius() {
+        return radius;
+    }
+
+    @Override
+    public void filterRegion(PixelRows source, PixelRows target, int x0, int y0, int x1, int y1) {
+        int[] pixels = source.pixels;
+        int width = source.width;
+        int height = source.imageHeight;
+
+        for (int y = y0; y < y1; y++) {
+            int out = target.rowStart(y);
+            int rowFrom = Math.max(-radius, -y);
+            int rowTo = Math.min(radius, height - 1 - y);
+            for (int x = x0; x < x1; x++) {
+                int columnFrom = Math.max(-radius, -x);
+                int columnTo = Math.min(radius, width - 1 - x);
+                float r = 0, g = 0, b = 0, weight = 0;
+                for (int i = rowFrom; i <= rowTo; i++) {
+                    int line = source.rowStart(y + i) + x;
+                    int row = (i + radius) * size + radius;
+                    for (int j = columnFrom; j <= columnTo; j++) {
+                        int rgb = pixels[line + j];
+                        float w = weights[row + j];
+                        r += w * ((rgb >> 16) & 0xFF);
+                        g += w * ((rgb >> 8) & 0xFF);
+                        b += w * (rgb & 0xFF);
+                        weight += w;
+                    }
+                }
+                float scale = total != 0 && weight != 0 ? total / weight : 1;
+                target.pixels[out + x] = (clamp(r * scale) << 16) | (clamp(g * scale) << 8) | clamp(b * scale);
+            }
+        }
+    }
+
+    private static int clamp(float value) {
+        return Math.max(0, Math.min(255, Math.round(value)));
+    }
+}
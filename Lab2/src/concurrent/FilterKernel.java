@@ -0,0 +1,79 @@
+/**
+ * A neighbourhood operation that ImageMeanFilter runs over tiles, strips and
+ * batches, reading and writing packed RGB rows directly.
+ * 
+ * <p>Every kernel reads source pixels at most {@link #radius()} rows and columns
+ * away from the output pixel. Like the mean filter, windows are clipped at the
+ * image border: pixels outside the image are left out rather than padded.</p>
+ * 
+ * <p>Usage example:</p>
+ * <pre>
+ * {@code
+ * ImageMeanFilter.applyFilter("input.jpg", "output.jpg", FilterKernel.median(5), 8);
+ * }
+ * </pre>
+ */
+public interface FilterKernel {
+
+    /**
+     * Rows and columns read on each side of an output pixel
+     */
+    int radius();
+
+    /**
+     * Filters the region [x0, x1) x [y0, y1)
+     * 
+     * @param source Source rows, including radius() halo rows around the region where the image has them
+     * @param target Output rows; only the region is written
+     * @param x0     Left column of the region (inclusive)
+     * @param y0     Top row of the region (inclusive)
+     * @param x1     Right column of the region (exclusive)
+     * @param y1     Bottom row of the region (exclusive)
+     */
+    void filterRegion(PixelRows source, PixelRows target, int x0, int y0, int x1, int y1);
+
+    /**
+     * Box mean over a kernelSize x kernelSize window, in constant time per pixel
+     */
+    static FilterKernel mean(int kernelSize) {
+        return new MeanKernel(kernelSize);
+    }
+
+    /**
+     * Median of each channel over a kernelSize x kernelSize window, in constant
+     * time per pixel. Removes salt-and-pepper noise while keeping edges.
+     */
+    static FilterKernel median(int kernelSize) {
+        return new MedianKernel(kernelSize);
+    }
+
+    /**
+     * Gaussian blur over a kernelSize x kernelSize window with sigma = kernelSize / 6,
+     * so the window covers three standard deviations on each side
+     */
+    static FilterKernel gaussian(int kernelSize) {
+        return gaussian(kernelSize, kernelSize / 6.0);
+    }
+
+    /**
+     * Gaussian blur over a kernelSize x kernelSize window, applied as two 1D passes
+     */
+    static FilterKernel gaussian(int kernelSize, double sigma) {
+        int radius = kernelSize / 2;
+        double[] weights = new double[2 * radius + 1];
+        for (int i = -radius; i <= radius; i++) {
+            weights[i + radius] = Math.exp(-(i * i) / (2 * sigma * sigma));
+        }
+        return new SeparableKernel(weights);
+    }
+
+    /**
+     * General size x size convolution. Weights are row-major and size must be odd.
+     * Near the border the in-bounds weights are rescaled to the kernel's total
+     * weight; kernels whose weights add up to zero (edge detectors) are not rescaled.
+     * Results are clamped to [0, 255].
+     */
+    static FilterKernel convolution(double[] weights, int size) {
+        return new ConvolutionKernel(weights, size);
+    }
+}
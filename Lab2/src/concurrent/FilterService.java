@@ -0,0 +1,194 @@
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Long-lived, thread-safe front end to the tiled filter for services that filter
+ * in-memory images over and over.
+ *
+ * <p>The worker pool is created once and kept until {@link #close()}. Output
+ * rasters come from a pool of int[] buffers kept per image size, and each worker
+ * keeps its tile scratch arrays between calls (see {@link TileScratch}), so once
+ * the buffers for the image sizes in use exist, a call allocates only its few
+ * tile tasks. Any number of request threads may call the service at once; their
+ * tiles share the workers.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>
+ * {@code
+ * try (FilterService service = new FilterService(FilterKernel.mean(7), 8)) {
+ *     int[] filtered = service.filter(pixels, width, height);
+ *     send(filtered);
+ *     service.release(filtered);
+ * }
+ * }
+ * </pre>
+ */
+public class FilterService implements AutoCloseable {
+    private static final ColorModel COLOR_MODEL = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+    private static final int[] RGB_MASKS = {0xFF0000, 0xFF00, 0xFF};
+
+    private final FilterKernel kernel;
+    private final ForkJoinPool pool;
+    private final int tileSize;
+    private final int buffersPerSize;
+
+    // Free buffers by length; ArrayBlockingQueue does not allocate on offer/poll
+    private final ConcurrentHashMap<Integer, BlockingQueue<int[]>> freeBuffers = new ConcurrentHashMap<>();
+
+    /**
+     * @param kernel     Filter applied by every call
+     * @param numThreads Number of worker threads, kept until close()
+     */
+    public FilterService(FilterKernel kernel, int numThreads) {
+        this(kernel, numThreads, ImageMeanFilter.DEFAULT_TILE_SIZE, 2 * numThreads);
+    }
+
+    /**
+     * @param kernel         Filter applied by every call
+     * @param numThreads     Number of worker threads, kept until close()
+     * @param tileSize       Tile edge in pixels
+     * @param buffersPerSize Released buffers kept for reuse per image size; extra ones are left to the GC
+     */
+    public FilterService(FilterKernel kernel, int numThreads, int tileSize, int buffersPerSize) {
+        if (numThreads < 1 || tileSize < 1 || buffersPerSize < 0) {
+            throw new IllegalArgumentException("numThreads and tileSize must be positive, buffersPerSize not negative");
+        }
+        this.kernel = kernel;
+        this.pool = new ForkJoinPool(numThreads);
+        this.tileSize = tileSize;
+        this.buffersPerSize = buffersPerSize;
+    }
+
+    /**
+     * Filters a packed 0xRRGGBB raster into a caller-owned one
+     *
+     * @param source Row-major source pixels; not modified
+     * @param target Row-major output pixels, at least width * height long; must not be source
+     * @param width  Image width
+     * @param height Image height
+     */
+    public void filter(int[] source, int[] target, int width, int height) {
+        if (source.length < width * height || target.length < width * height) {
+            throw new IllegalArgumentException("Rasters are smaller than " + width + "x" + height);
+        }
+        if (source == target) {
+            throw new IllegalArgumentException("The filter cannot run in place");
+        }
+        // invoke() may be called from any number of threads; it returns once every tile is written
+        pool.invoke(new ImageMeanFilter.TileTask(PixelRows.of(source, width, height), PixelRows.of(target, width, height),
+                                                 0, 0, width, height, kernel, tileSize, null));
+    }
+
+    /**
+     * Filters a packed 0xRRGGBB raster into a pooled buffer
+     *
+     * @param source Row-major source pixels; not modified
+     * @param width  Image width
+     * @param height Image height
+     * @return Buffer of exactly width * height pixels; hand it back with {@link #release(int[])} once done
+     */
+    public int[] filter(int[] source, int width, int height) {
+        int[] target = acquire(width * height);
+        filter(source, target, width, height);
+        return target;
+    }
+
+    /**
+     * Filters an image into a TYPE_INT_RGB image backed by a pooled buffer.
+     * Images already stored as packed ints are read in place; others are copied
+     * into a pooled buffer first.
+     *
+     * @param image Source image
+     * @return Filtered image; hand it back with {@link #release(BufferedImage)} once done
+     */
+    public BufferedImage filter(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] target = acquire(width * height);
+        if (ImageMeanFilter.isPackedRgb(image)) {
+            filter(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), target, width, height);
+        } else {
+            int[] source = acquire(width * height);
+            try {
+                image.getRGB(0, 0, width, height, source, 0, width);
+                filter(source, target, width, height);
+            } finally {
+                release(source);
+            }
+        }
+        return wrap(target, width, height);
+    }
+
+    /**
+     * Returns a buffer of exactly length ints from the pool, or a new one if none
+     * is free. Its contents are whatever the last user left.
+     */
+    public int[] acquire(int length) {
+        BlockingQueue<int[]> free = freeBuffers.get(length);
+        int[] buffer = free == null ? null : free.poll();
+        return buffer != null ? buffer : new int[length];
+    }
+
+    /**
+     * Returns a buffer to the pool. The caller must not use it afterwards.
+     */
+    public void release(int[] buffer) {
+        if (buffersPerSize > 0) {
+            freeBuffers.computeIfAbsent(buffer.length, length -> new ArrayBlockingQueue<>(buffersPerSize))
+                .offer(buffer);
+        }
+    }
+
+    /**
+     * Returns the buffer behind an image from {@link #filter(BufferedImage)} to the pool
+     */
+    public void release(BufferedImage image) {
+        release(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+    }
+
+    /**
+     * Runs the filter a number of times on a synthetic image, so the JIT has compiled
+     * the hot loops and the workers have their scratch arrays before real requests arrive
+     *
+     * @param width      Width of the images the service will see
+     * @param height     Height of the images the service will see
+     * @param iterations Calls to make; a few thousand tiles is usually enough for C2
+     */
+    public void warmUp(int width, int height, int iterations) {
+        int[] source = acquire(width * height);
+        for (int i = 0; i < source.length; i++) {
+            source[i] = i * 0x9E3779B1 & 0xFFFFFF;
+        }
+        for (int i = 0; i < iterations; i++) {
+            release(filter(source, width, height));
+        }
+        release(source);
+    }
+
+    /**
+     * Stops the worker threads once the calls in progress have finished
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        freeBuffers.clear();
+    }
+
+    /**
+     * Wraps a packed 0xRRGGBB buffer as a TYPE_INT_RGB image without copying it
+     */
+    private static BufferedImage wrap(int[] pixels, int width, int height) {
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, width * height),
+            width, height, width, RGB_MASKS, new Point(0, 0));
+        return new BufferedImage(COLOR_MODEL, raster, false, null);
+    }
+}
@@ -0,0 +1,222 @@
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Filters a sequence of same-sized frames, such as video or a camera stream,
+ * recomputing only the tiles that can have changed since the previous frame.
+ *
+ * <p>Each frame is compared with the previous one tile by tile. An output tile is
+ * filtered again only if a changed tile lies within the kernel radius of it;
+ * every other output tile keeps its pixels from the previous frame. The
+ * comparison reads the whole frame, but it is a plain array compare that runs at
+ * memory speed, so the time per frame follows the changed area rather than the
+ * resolution.</p>
+ *
+ * <p>A sequence is not meant to be shared: frames must be given in order, and the
+ * calls are serialized.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>
+ * {@code
+ * try (FrameSequenceFilter frames = new FrameSequenceFilter(FilterKernel.mean(7), 1920, 1080, 8)) {
+ *     for (int[] frame : camera) {
+ *         show(frames.next(frame));
+ *     }
+ * }
+ * }
+ * </pre>
+ */
+public class FrameSequenceFilter implements AutoCloseable {
+    private final FilterKernel kernel;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tilesAcross;
+    private final int tilesDown;
+    // How many tiles away a changed tile still reaches through the kernel
+    private final int reach;
+    private final ForkJoinPool pool;
+
+    // Last frame seen and its filtered output
+    private final int[] previous;
+    private final int[] output;
+    private boolean first = true;
+
+    // Per tile: source changed, output must be recomputed
+    private final boolean[] changed;
+    private final boolean[] stale;
+    private final int[] staleList;
+
+    // Scratch for frames given as images
+    private int[] frameBuffer;
+
+    private int changedTiles;
+    private int filteredTiles;
+
+    /**
+     * @param kernel     Filter applied to every frame
+     * @param width      Frame width
+     * @param height     Frame height
+     * @param numThreads Number of worker threads, kept until close()
+     */
+    public FrameSequenceFilter(FilterKernel kernel, int width, int height, int numThreads) {
+        this(kernel, width, height, numThreads, ImageMeanFilter.DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * @param kernel     Filter applied to every frame
+     * @param width      Frame width
+     * @param height     Frame height
+     * @param numThreads Number of worker threads, kept until close()
+     * @param tileSize   Tile edge in pixels; smaller tiles follow small changes more closely
+     */
+    public FrameSequenceFilter(FilterKernel kernel, int width, int height, int numThreads, int tileSize) {
+        if (width < 1 || height < 1 || numThreads < 1 || tileSize < 1) {
+            throw new IllegalArgumentException("width, height, numThreads and tileSize must be positive");
+        }
+        this.kernel = kernel;
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.tilesAcross = (width + tileSize - 1) / tileSize;
+        this.tilesDown = (height + tileSize - 1) / tileSize;
+        this.reach = (kernel.radius() + tileSize - 1) / tileSize;
+        this.pool = new ForkJoinPool(numThreads);
+
+        this.previous = new int[width * height];
+        this.output = new int[width * height];
+        this.changed = new boolean[tilesAcross * tilesDown];
+        this.stale = new boolean[tilesAcross * tilesDown];
+        this.staleList = new int[tilesAcross * tilesDown];
+    }
+
+    /**
+     * Filters the next frame
+     *
+     * @param frame Row-major packed 0xRRGGBB pixels, width * height of them; not modified
+     * @return Filtered frame. The array belongs to the sequence: it is overwritten by
+     *         the next call and must not be modified.
+     */
+    public synchronized int[] next(int[] frame) {
+        if (frame.length != width * height) {
+            throw new IllegalArgumentException("Expected a " + width + "x" + height + " frame");
+        }
+
+        // Find the tiles whose source pixels changed
+        if (first) {
+            Arrays.fill(changed, true);
+        } else {
+            IndexRange.forEach(pool, changed.length, tile -> changed[tile] = tileChanged(frame, tile));
+        }
+
+        // Mark every output tile within reach of a changed one
+        Arrays.fill(stale, false);
+        changedTiles = 0;
+        for (int tile = 0; tile < changed.length; tile++) {
+            if (changed[tile]) {
+                changedTiles++;
+                markAround(tile % tilesAcross, tile / tilesAcross);
+            }
+        }
+        filteredTiles = 0;
+        for (int tile = 0; tile < stale.length; tile++) {
+            if (stale[tile]) {
+                staleList[filteredTiles++] = tile;
+            }
+        }
+
+        // Filter the stale tiles from the new frame, then remember the changed source tiles
+        PixelRows source = PixelRows.of(frame, width, height);
+        PixelRows target = PixelRows.of(output, width, height);
+        IndexRange.forEach(pool, filteredTiles, i -> {
+            int tile = staleList[i];
+            int x0 = (tile % tilesAcross) * tileSize;
+            int y0 = (tile / tilesAcross) * tileSize;
+            kernel.filterRegion(source, target, x0, y0, Math.min(width, x0 + tileSize), Math.min(height, y0 + tileSize));
+        });
+        IndexRange.forEach(pool, changed.length, tile -> {
+            if (changed[tile]) {
+                copyTile(frame, previous, tile);
+            }
+        });
+        first = false;
+        return output;
+    }
+
+    /**
+     * Filters the next frame given as an image
+     *
+     * @param frame Image of the sequence's size
+     * @return Filtered frame, as for {@link #next(int[])}
+     */
+    public synchronized int[] next(BufferedImage frame) {
+        if (frameBuffer == null) {
+            frameBuffer = new int[width * height];
+        }
+        frame.getRGB(0, 0, width, height, frameBuffer, 0, width);
+        return next(frameBuffer);
+    }
+
+    /**
+     * Tiles whose source pixels changed in the last frame
+     */
+    public synchronized int changedTiles() {
+        return changedTiles;
+    }
+
+    /**
+     * Tiles filtered for the last frame: the changed ones and those within the kernel radius of them
+     */
+    public synchronized int filteredTiles() {
+        return filteredTiles;
+    }
+
+    /**
+     * Total number of tiles in a frame
+     */
+    public int tiles() {
+        return changed.length;
+    }
+
+    /**
+     * Stops the worker threads
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private boolean tileChanged(int[] frame, int tile) {
+        int x0 = (tile % tilesAcross) * tileSize;
+        int y0 = (tile / tilesAcross) * tileSize;
+        int x1 = Math.min(width, x0 + tileSize);
+        int y1 = Math.min(height, y0 + tileSize);
+        for (int y = y0; y < y1; y++) {
+            int from = y * width + x0;
+            int to = y * width + x1;
+            if (!Arrays.equals(frame, from, to, previous, from, to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void copyTile(int[] from, int[] to, int tile) {
+        int x0 = (tile % tilesAcross) * tileSize;
+        int y0 = (tile / tilesAcross) * tileSize;
+        int x1 = Math.min(width, x0 + tileSize);
+        int y1 = Math.min(height, y0 + tileSize);
+        for (int y = y0; y < y1; y++) {
+            System.arraycopy(from, y * width + x0, to, y * width + x0, x1 - x0);
+        }
+    }
+
+    private void markAround(int tileX, int tileY) {
+        for (int y = Math.max(0, tileY - reach); y <= Math.min(tilesDown - 1, tileY + reach); y++) {
+            for (int x = Math.max(0, tileX - reach); x <= Math.min(tilesAcross - 1, tileX + reach); x++) {
+                stale[y * tilesAcross + x] = true;
+            }
+        }
+    }
+}
@@ -1,7 +1,21 @@
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 /**
  * This class provides functionality to apply a mean filter to an image.
@@ -15,23 +29,141 @@ import javax.imageio.ImageIO;
  * }
  * </pre>
  * 
+ * <p>Other neighbourhood filters, such as the median, run through the same
+ * tiling, streaming and batch paths via {@link FilterKernel}.</p>
+ * 
  * <p>Supported image formats: JPG, PNG</p>
  * 
  * <p>Author: temmanuel@comptuacao.ufcg.edu.br</p>
  */
 public class ImageMeanFilter {
-    
+
+    /**
+     * Default tile edge in pixels. A 128x128 tile with a small kernel keeps its
+     * source rows and scratch sums within a typical L2 cache.
+     */
+    public static final int DEFAULT_TILE_SIZE = 128;
+
+    /**
+     * Receives the time spent on each tile, to help choose a tile size
+     */
+    @FunctionalInterface
+    public interface TileListener {
+        /**
+         * Called from the worker thread once a tile has been filtered
+         *
+         * @param x      Left column of the tile
+         * @param y      Top row of the tile
+         * @param width  Tile width
+         * @param height Tile height
+         * @param nanos  Time spent filtering the tile
+         */
+        void tileFiltered(int x, int y, int width, int height, long nanos);
+    }
+
+    /**
+     * Applies mean filter to an image using one thread per available processor
+     * 
+     * @param inputPath  Path to input image
+     * @param outputPath Path to output image 
+     * @param kernelSize Size of mean kernel
+     * @throws IOException If there is an error reading/writing
+     */
+    public static void applyMeanFilter(String inputPath, String outputPath, int kernelSize) throws IOException {
+        applyMeanFilter(inputPath, outputPath, kernelSize, Runtime.getRuntime().availableProcessors());
+    }
+
     /**
      * Applies mean filter to an image
      * 
      * @param inputPath  Path to input image
      * @param outputPath Path to output image 
      * @param kernelSize Size of mean kernel
+     * @param numThreads Number of worker threads
      * @throws IOException If there is an error reading/writing
      */
     public static void applyMeanFilter(String inputPath, String outputPath, int kernelSize, int numThreads) throws IOException {
+        applyMeanFilter(inputPath, outputPath, kernelSize, numThreads, DEFAULT_TILE_SIZE, null);
+    }
+
+    /**
+     * Applies mean filter to an image, splitting it into square tiles that are
+     * filtered on a work-stealing ForkJoinPool
+     * 
+     * @param inputPath  Path to input image
+     * @param outputPath Path to output image 
+     * @param kernelSize Size of mean kernel
+     * @param numThreads Number of worker threads
+     * @param tileSize   Tile edge in pixels
+     * @param listener   Receives the time spent on each tile, may be null
+     * @throws IOException If there is an error reading/writing
+     */
+    public static void applyMeanFilter(String inputPath, String outputPath, int kernelSize, int numThreads,
+                                       int tileSize, TileListener listener) throws IOException {
+        applyFilter(inputPath, outputPath, FilterKernel.mean(kernelSize), numThreads, tileSize, listener);
+    }
+
+    /**
+     * Applies any filter kernel to an image, such as {@link FilterKernel#median}
+     * 
+     * @param inputPath  Path to input image
+     * @param outputPath Path to output image 
+     * @param kernel     Filter to apply
+     * @param numThreads Number of worker threads
+     * @throws IOException If there is an error reading/writing
+     */
+    public static void applyFilter(String inputPath, String outputPath, FilterKernel kernel, int numThreads) throws IOException {
+        applyFilter(inputPath, outputPath, kernel, numThreads, DEFAULT_TILE_SIZE, null);
+    }
+
+    /**
+     * Applies any filter kernel to an image, splitting it into square tiles that
+     * are filtered on a work-stealing ForkJoinPool
+     * 
+     * @param inputPath  Path to input image
+     * @param outputPath Path to output image 
+     * @param kernel     Filter to apply
+     * @param numThreads Number of worker threads
+     * @param tileSize   Tile edge in pixels
+     * @param listener   Receives the time spent on each tile, may be null
+     * @throws IOException If there is an error reading/writing
+     */
+    public static void applyFilter(String inputPath, String outputPath, FilterKernel kernel, int numThreads,
+                                   int tileSize, TileListener listener) throws IOException {
+        if (numThreads < 1 || tileSize < 1) {
+            throw new IllegalArgumentException("numThreads and tileSize must be positive");
+        }
+
         // Load image
         BufferedImage originalImage = ImageIO.read(new File(inputPath));
+        if (originalImage == null) {
+            throw new IOException("Unsupported image format: " + inputPath);
+        }
+
+        BufferedImage filteredImage;
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            filteredImage = filter(originalImage, kernel, pool, tileSize, listener);
+        } finally {
+            pool.shutdown();
+        }
+
+        // Save filtered image
+        ImageIO.write(filteredImage, "jpg", new File(outputPath));
+    }
+
+    /**
+     * Applies a filter to a decoded image, tiling it on the given pool
+     * 
+     * @param image      Source image
+     * @param kernel     Filter to apply
+     * @param pool       Pool that filters the tiles
+     * @param tileSize   Tile edge in pixels
+     * @param listener   Receives the time spent on each tile, may be null
+     * @return New TYPE_INT_RGB image with the filtered pixels
+     */
+    static BufferedImage filter(BufferedImage image, FilterKernel kernel, ForkJoinPool pool, int tileSize, TileListener listener) {
+        BufferedImage originalImage = toIntRgb(image);
         
         // Create result image
         BufferedImage filteredImage = new BufferedImage(
@@ -40,129 +172,342 @@ public class ImageMeanFilter {
             BufferedImage.TYPE_INT_RGB
         );
         
-        // Image processing
-        //int width = originalImage.getWidth();
+        // Image processing works directly on the int[] behind both images
+        int[] source = pixels(originalImage);
+        int[] target = pixels(filteredImage);
+        int width = originalImage.getWidth();
         int height = originalImage.getHeight();
-        int segmentHeight = height / numThreads;
-        Thread[] threads = new Thread[numThreads];
 
-        // Process each pixel
-        for (int i = 0; i < numThreads; i++) {
-            //for (int x = 0; x < width; x++) {
-            int startRow = i*segmentHeight;
-            int endRow = (i == numThreads - 1) ? height : startRow + segmentHeight;
+        // Tiles never overlap, so each task writes its own output pixels without locking;
+        // invoke() returns only after every tile is done, which publishes them to the caller
+        pool.invoke(new TileTask(PixelRows.of(source, width, height), PixelRows.of(target, width, height),
+                                 0, 0, width, height, kernel, tileSize, listener));
+        return filteredImage;
+    }
+
+    /**
+     * Applies mean filter to an image that may not fit in memory, processing it
+     * in horizontal strips. Peak memory depends on the image width and stripHeight,
+     * not on the image height.
+     * 
+     * <p>Source rows are decoded strip by strip through an {@link ImageReader}, and
+     * output rows are handed to the writer as it asks for them. The output format
+     * comes from the extension of outputPath and must be one whose writer pulls
+     * rows in order, such as PNG or TIFF; the JDK JPEG writer needs the whole image
+     * at once, so JPEG output is rejected. Readers without random access (JPEG, PNG)
+     * decode the rows above each strip again, trading CPU time for memory.</p>
+     * 
+     * @param inputPath   Path to input image
+     * @param outputPath  Path to output image, ending in .png or .tif/.tiff
+     * @param kernelSize  Size of mean kernel
+     * @param numThreads  Number of worker threads filtering each strip
+     * @param stripHeight Output rows held in memory at a time
+     * @throws IOException If there is an error reading/writing
+     */
+    public static void applyMeanFilterStreaming(String inputPath, String outputPath, int kernelSize,
+                                                int numThreads, int stripHeight) throws IOException {
+        applyFilterStreaming(inputPath, outputPath, FilterKernel.mean(kernelSize), numThreads, stripHeight);
+    }
 
-            threads[i] = new Thread(() -> processSegment(originalImage, filteredImage, startRow, endRow, kernelSize));
-            threads[i].start();
+    /**
+     * Applies any filter kernel to an image in horizontal strips, as
+     * {@link #applyMeanFilterStreaming} does for the mean filter
+     * 
+     * @param inputPath   Path to input image
+     * @param outputPath  Path to output image, ending in .png or .tif/.tiff
+     * @param kernel      Filter to apply
+     * @param numThreads  Number of worker threads filtering each strip
+     * @param stripHeight Output rows held in memory at a time
+     * @throws IOException If there is an error reading/writing
+     */
+    public static void applyFilterStreaming(String inputPath, String outputPath, FilterKernel kernel,
+                                            int numThreads, int stripHeight) throws IOException {
+        if (numThreads < 1 || stripHeight < 1) {
+            throw new IllegalArgumentException("numThreads and stripHeight must be positive");
+        }
+        String format = outputPath.substring(outputPath.lastIndexOf('.') + 1).toLowerCase();
+        if (format.equals("jpg") || format.equals("jpeg")) {
+            throw new IOException("Streaming output needs a format written row by row, such as png or tiff");
+        }
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(inputPath))) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("No image reader for " + inputPath);
             }
-        
-        // As threads depois de serem iniciadas com o método start(), serão esperadas com o join() para garantir que todas completem o processamento antes de salvar o arquivo
-        for (Thread thread : threads) {
+            ImageReader reader = readers.next();
+            reader.setInput(input);
+
+            ForkJoinPool pool = new ForkJoinPool(numThreads);
             try {
-                thread.join();
-            } catch (InterruptedException e) {
-                System.err.println("Thread interrupted: " + e.getMessage());
+                StripFilteredImage filtered = new StripFilteredImage(reader, kernel, stripHeight, pool);
+                if (!ImageIO.write(filtered, format, new File(outputPath))) {
+                    throw new IOException("No image writer for format " + format);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+                reader.dispose();
             }
         }
-
-        // Save filtered image
-        ImageIO.write(filteredImage, "jpg", new File(outputPath));
     }
-    
-    private static void processSegment(BufferedImage originalImage, BufferedImage filteredImage, int startRow, int endRow, int kernelSize) {
-        int width = originalImage.getWidth();
 
-        for (int y = startRow; y < endRow; y++) {
-            for (int x = 0; x < width; x++) {
-                int[] avgColor = calculateNeighborhoodAverage(originalImage, x, y, kernelSize);
-                synchronized (filteredImage) { 
-                    filteredImage.setRGB(x, y,
-                        (avgColor[0] << 16) |
-                        (avgColor[1] << 8) |
-                        avgColor[2]
-                    );
+    /**
+     * Splits a region in two along its longer side, on tile boundaries, until it
+     * is a single tile. Idle workers steal the halves still queued, so tiles that
+     * take longer do not leave the other threads waiting.
+     */
+    static class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PixelRows source;
+        private final PixelRows target;
+        private final int x0, y0, x1, y1;
+        private final FilterKernel kernel;
+        private final int tileSize;
+        private final TileListener listener;
+
+        TileTask(PixelRows source, PixelRows target, int x0, int y0, int x1, int y1,
+                 FilterKernel kernel, int tileSize, TileListener listener) {
+            this.source = source;
+            this.target = target;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.kernel = kernel;
+            this.tileSize = tileSize;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            int tilesAcross = (x1 - x0 + tileSize - 1) / tileSize;
+            int tilesDown = (y1 - y0 + tileSize - 1) / tileSize;
+            if (tilesAcross <= 1 && tilesDown <= 1) {
+                long start = System.nanoTime();
+                kernel.filterRegion(source, target, x0, y0, x1, y1);
+                if (listener != null) {
+                    listener.tileFiltered(x0, y0, x1 - x0, y1 - y0, System.nanoTime() - start);
                 }
+                return;
             }
+            if (tilesAcross >= tilesDown) {
+                int split = x0 + (tilesAcross / 2) * tileSize;
+                invokeAll(subTask(x0, y0, split, y1), subTask(split, y0, x1, y1));
+            } else {
+                int split = y0 + (tilesDown / 2) * tileSize;
+                invokeAll(subTask(x0, y0, x1, split), subTask(x0, split, x1, y1));
+            }
+        }
+
+        private TileTask subTask(int x0, int y0, int x1, int y1) {
+            return new TileTask(source, target, x0, y0, x1, y1, kernel, tileSize, listener);
         }
     }
 
     /**
-     * Calculates average colors in a pixel's neighborhood
-     * 
-     * @param image      Source image
-     * @param centerX    X coordinate of center pixel
-     * @param centerY    Y coordinate of center pixel
-     * @param kernelSize Kernel size
-     * @return Array with R, G, B averages
+     * Returns the image itself if its buffer holds exactly its own packed RGB pixels,
+     * otherwise a TYPE_INT_RGB copy of it
+     *
+     * @param image Decoded image
+     * @return Image backed by a DataBufferInt whose index 0 is its top-left pixel
      */
-    private static int[] calculateNeighborhoodAverage(BufferedImage image, int centerX, int centerY, int kernelSize) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int pad = kernelSize / 2;
-        
-        // Arrays for color sums
-        long redSum = 0, greenSum = 0, blueSum = 0;
-        int pixelCount = 0;
-        
-        // Process neighborhood
-        for (int dy = -pad; dy <= pad; dy++) {
-            for (int dx = -pad; dx <= pad; dx++) {
-                int x = centerX + dx;
-                int y = centerY + dy;
-                
-                // Check image bounds
-                if (x >= 0 && x < width && y >= 0 && y < height) {
-                    // Get pixel color
-                    int rgb = image.getRGB(x, y);
-                    
-                    // Extract color components
-                    int red = (rgb >> 16) & 0xFF;
-                    int green = (rgb >> 8) & 0xFF;
-                    int blue = rgb & 0xFF;
-                    
-                    // Sum colors
-                    redSum += red;
-                    greenSum += green;
-                    blueSum += blue;
-                    pixelCount++;
-                }
-            }
+    static BufferedImage toIntRgb(BufferedImage image) {
+        if (isPackedRgb(image)) {
+            return image;
         }
-        
-        // Calculate average
-        return new int[] {
-            (int)(redSum / pixelCount),
-            (int)(greenSum / pixelCount),
-            (int)(blueSum / pixelCount)
-        };
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = converted.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return converted;
+    }
+
+    /**
+     * True if the image's buffer holds exactly its own pixels, row-major with no
+     * padding; not the case for a sub-image, which shares its parent's buffer
+     */
+    static boolean isPackedRgb(BufferedImage image) {
+        return image.getType() == BufferedImage.TYPE_INT_RGB
+            && image.getRaster().getDataBuffer().getSize() == image.getWidth() * image.getHeight()
+            && image.getRaster().getParent() == null;
     }
-    
+
+    /**
+     * Returns the int[] backing a TYPE_INT_RGB image, one packed 0xRRGGBB value per pixel, row-major
+     */
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
     /**
      * Main method for demonstration
      * 
-     * Usage: java ImageMeanFilter <input_file>
+     * Usage: java ImageMeanFilter [--filter F] [--strip-height N] <input_file> [num_threads] [tile_size]
+     *        java ImageMeanFilter [--filter F] --batch <output_dir> [--stages D,F,E] <input>...
+     *        java ImageMeanFilter [--filter F] --preview <max_edge> <input_file> [num_threads] [detail]
      * 
      * Arguments:
-     *   input_file - Path to the input image file to be processed
-     *                Supported formats: JPG, PNG
+     *   --filter       - 7x7 filter to apply: mean (default), median or gaussian
+     *   --strip-height - Stream the image in strips of N rows instead of loading it whole;
+     *                    the output is then written as "filtered_output.png"
+     *   input_file     - Path to the input image file to be processed
+     *                    Supported formats: JPG, PNG
+     *   num_threads    - Worker threads (default: available processors)
+     *   tile_size      - Tile edge in pixels (default: 128)
+     *   --batch        - Filter every image file or directory given into output_dir,
+     *                    decoding, filtering and encoding in pipelined stages
+     *   --stages       - Decode, filter and encode thread counts (default: available
+     *                    processors for each)
+     *   --preview      - Write a filtered preview at most max_edge pixels across as
+     *                    "preview_output.jpg", then refine it to "filtered_output.jpg"
+     *   detail         - Pyramid levels finer than needed for the preview (default: 0)
      * 
      * Example:
-     *   java ImageMeanFilter input.jpg
+     *   java ImageMeanFilter input.jpg 8 256
+     *   java ImageMeanFilter --strip-height 512 huge.png 8
+     *   java ImageMeanFilter --filter median noisy.jpg
+     *   java ImageMeanFilter --preview 800 huge.jpg 8
+     *   java ImageMeanFilter --batch filtered --stages 4,8,4 photos/
      * 
      * The program will generate a filtered output image named "filtered_output.jpg"
-     * using a 7x7 mean filter kernel
+     * using a 7x7 filter kernel, and print how long the tiles took
      */
     public static void main(String[] args) {
+        String filterName = "mean";
+        if (args.length >= 2 && args[0].equals("--filter")) {
+            filterName = args[1];
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        FilterKernel kernel = kernelByName(filterName, 7);
+        if (args.length >= 1 && args[0].equals("--batch")) {
+            runBatch(Arrays.copyOfRange(args, 1, args.length), kernel);
+            return;
+        }
+        if (args.length >= 1 && args[0].equals("--preview")) {
+            runPreview(Arrays.copyOfRange(args, 1, args.length), filterName);
+            return;
+        }
+
+        int stripHeight = 0;
+        if (args.length >= 2 && args[0].equals("--strip-height")) {
+            stripHeight = Integer.parseInt(args[1]);
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
         if (args.length < 1) {
-            System.err.println("Usage: java ImageMeanFilter <input_file>");
+            System.err.println("Usage: java ImageMeanFilter [--strip-height N] <input_file> [num_threads] [tile_size]");
             System.exit(1);
         }
 
         String inputFile = args[0];
+        int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int tileSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_TILE_SIZE;
+
+        if (stripHeight > 0) {
+            try {
+                applyFilterStreaming(inputFile, "filtered_output.png", kernel, numThreads, stripHeight);
+            } catch (IOException e) {
+                System.err.println("Error processing image: " + e.getMessage());
+            }
+            return;
+        }
+
+        AtomicLong tiles = new AtomicLong();
+        AtomicLong totalNanos = new AtomicLong();
+        AtomicLong maxNanos = new AtomicLong();
+        TileListener listener = (x, y, width, height, nanos) -> {
+            tiles.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        };
+
+        try {
+            applyFilter(inputFile, "filtered_output.jpg", kernel, numThreads, tileSize, listener);
+            System.out.printf("%d tiles of %dx%d on %d threads: mean %.3f ms, max %.3f ms per tile%n",
+                tiles.get(), tileSize, tileSize, numThreads,
+                totalNanos.get() / 1e6 / Math.max(1, tiles.get()), maxNanos.get() / 1e6);
+        } catch (IOException e) {
+            System.err.println("Error processing image: " + e.getMessage());
+        }
+    }
+
+    private static FilterKernel kernelByName(String name, int kernelSize) {
+        switch (name) {
+            case "mean":
+                return FilterKernel.mean(kernelSize);
+            case "median":
+                return FilterKernel.median(kernelSize);
+            case "gaussian":
+                return FilterKernel.gaussian(kernelSize);
+            default:
+                System.err.println("Unknown filter " + name + "; expected mean, median or gaussian");
+                System.exit(1);
+                return null;
+        }
+    }
+
+    private static void runPreview(String[] args, String filterName) {
+        if (args.length < 2) {
+            System.err.println("Usage: java ImageMeanFilter [--filter F] --preview <max_edge> <input_file> [num_threads] [detail]");
+            System.exit(1);
+        }
+        int maxEdge = Integer.parseInt(args[0]);
+        int numThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int detail = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
         try {
-            applyMeanFilter(inputFile, "filtered_output.jpg", 7, 4);
+            BufferedImage image = ImageIO.read(new File(args[1]));
+            if (image == null) {
+                throw new IOException("Unsupported image format: " + args[1]);
+            }
+            double scale = Math.min(1.0, (double) maxEdge / Math.max(image.getWidth(), image.getHeight()));
+            int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+            int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+            long start = System.nanoTime();
+            try (PreviewFilter preview = new PreviewFilter(image, size -> kernelByName(filterName, size), 7, numThreads)) {
+                long built = System.nanoTime();
+                BufferedImage previewImage = preview.preview(width, height, detail);
+                long previewed = System.nanoTime();
+                ImageIO.write(previewImage, "jpg", new File("preview_output.jpg"));
+                System.out.printf("Pyramid of %d levels in %.1f ms, %dx%d preview in %.1f ms%n",
+                    preview.levels(), (built - start) / 1e6, width, height, (previewed - built) / 1e6);
+
+                long refining = System.nanoTime();
+                BufferedImage filtered = preview.refine(width, height, null).join();
+                System.out.printf("Full resolution in %.1f ms%n", (System.nanoTime() - refining) / 1e6);
+                ImageIO.write(filtered, "jpg", new File("filtered_output.jpg"));
+            }
         } catch (IOException e) {
             System.err.println("Error processing image: " + e.getMessage());
         }
     }
+
+    private static void runBatch(String[] args, FilterKernel kernel) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int[] stages = {processors, processors, processors};
+        int first = 1;
+        if (args.length >= 3 && args[1].equals("--stages")) {
+            stages = Arrays.stream(args[2].split(",")).mapToInt(Integer::parseInt).toArray();
+            first = 3;
+        }
+        if (args.length <= first || stages.length != 3) {
+            System.err.println("Usage: java ImageMeanFilter --batch <output_dir> [--stages D,F,E] <input>...");
+            System.exit(1);
+        }
+
+        List<Path> inputs = new ArrayList<>();
+        for (int i = first; i < args.length; i++) {
+            inputs.add(Paths.get(args[i]));
+        }
+        try {
+            new BatchMeanFilter(kernel, stages[0], stages[1], stages[2]).run(inputs, Paths.get(args[0]));
+        } catch (IOException e) {
+            System.err.println("Error processing images: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
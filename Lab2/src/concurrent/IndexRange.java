@@ -0,0 +1,41 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs a body for each index of a range on a ForkJoinPool, bisecting the range
+ * until a single index is left, like ImageMeanFilter.TileTask does with regions.
+ * Meant for indices that stand for a good amount of work each, such as a tile or
+ * a row.
+ */
+final class IndexRange extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int from, to;
+    private final IntConsumer body;
+
+    private IndexRange(int from, int to, IntConsumer body) {
+        this.from = from;
+        this.to = to;
+        this.body = body;
+    }
+
+    /**
+     * Runs body for 0 to count - 1 on the pool and returns once all are done
+     */
+    static void forEach(ForkJoinPool pool, int count, IntConsumer body) {
+        if (count > 0) {
+            pool.invoke(new IndexRange(0, count, body));
+        }
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from == 1) {
+            body.accept(from);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new IndexRange(from, middle, body), new IndexRange(middle, to, body));
+    }
+}
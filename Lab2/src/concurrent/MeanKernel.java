@@ -0,0 +1,123 @@
+/**
+ * Box mean computed with a sliding window, so the cost per pixel does not depend
+ * on the kernel size.
+ * 
+ * <p>The box is separable: a horizontal pass keeps a running sum along each row,
+ * and a vertical pass keeps running column sums of those row sums. Neighbours
+ * outside the image are skipped, so border pixels are averaged only over the
+ * in-bounds part of the window, exactly like a direct kernelSize x kernelSize loop.</p>
+ */
+final class MeanKernel implements FilterKernel {
+    private final int pad;
+
+    MeanKernel(int kernelSize) {
+        if (kernelSize < 1) {
+            throw new IllegalArgumentException("kernelSize must be positive");
+        }
+        this.pad = kernelSize / 2;
+    }
+
+    @Override
+    public int radius() {
+        return pad;
+    }
+
+    @Override
+    public void filterRegion(PixelRows source, PixelRows target, int x0, int y0, int x1, int y1) {
+        int[] pixels = source.pixels;
+        int width = source.width;
+        int height = source.imageHeight;
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        int regionWidth = x1 - x0;
+        // Rows read by the vertical window, including the halo above and below
+        int firstRow = Math.max(0, y0 - pad);
+        int lastRow = Math.min(height - 1, y1 - 1 + pad);
+
+        // Horizontal pass: per-channel sums of each row over [x - pad, x + pad], for x in the region
+        // Working arrays come from the worker's scratch, so repeated tiles do not allocate
+        TileScratch scratch = TileScratch.get();
+        int rows = lastRow - firstRow + 1;
+        int[] rowRed = scratch.ints(0, rows * regionWidth);
+        int[] rowGreen = scratch.ints(1, rows * regionWidth);
+        int[] rowBlue = scratch.ints(2, rows * regionWidth);
+        for (int y = firstRow; y <= lastRow; y++) {
+            int line = source.rowStart(y);
+            int base = (y - firstRow) * regionWidth - x0;
+            int redSum = 0, greenSum = 0, blueSum = 0;
+            // Start with the window of x0 - 1, so the first slide below yields the window of x0
+            for (int x = Math.max(0, x0 - pad - 1); x <= Math.min(x0 + pad - 1, width - 1); x++) {
+                int rgb = pixels[line + x];
+                redSum += (rgb >> 16) & 0xFF;
+                greenSum += (rgb >> 8) & 0xFF;
+                blueSum += rgb & 0xFF;
+            }
+            for (int x = x0; x < x1; x++) {
+                // Slide the window: add the column entering on the right, drop the one leaving on the left
+                if (x + pad < width) {
+                    int rgb = pixels[line + x + pad];
+                    redSum += (rgb >> 16) & 0xFF;
+                    greenSum += (rgb >> 8) & 0xFF;
+                    blueSum += rgb & 0xFF;
+                }
+                if (x - pad - 1 >= 0) {
+                    int rgb = pixels[line + x - pad - 1];
+                    redSum -= (rgb >> 16) & 0xFF;
+                    greenSum -= (rgb >> 8) & 0xFF;
+                    blueSum -= rgb & 0xFF;
+                }
+                rowRed[base + x] = redSum;
+                rowGreen[base + x] = greenSum;
+                rowBlue[base + x] = blueSum;
+            }
+        }
+
+        // Number of in-bounds columns of the window centered on each x of the region
+        int[] columnCount = scratch.ints(3, regionWidth);
+        for (int x = x0; x < x1; x++) {
+            columnCount[x - x0] = Math.min(width - 1, x + pad) - Math.max(0, x - pad) + 1;
+        }
+
+        // Vertical pass: running sums of the row sums over [y - pad, y + pad]
+        long[] redSum = scratch.zeroedLongs(0, regionWidth);
+        long[] greenSum = scratch.zeroedLongs(1, regionWidth);
+        long[] blueSum = scratch.zeroedLongs(2, regionWidth);
+        for (int y = firstRow; y <= Math.min(height - 1, y0 + pad); y++) {
+            addRow(rowRed, rowGreen, rowBlue, (y - firstRow) * regionWidth, regionWidth, redSum, greenSum, blueSum, 1);
+        }
+
+        for (int y = y0; y < y1; y++) {
+            int rowCount = Math.min(height - 1, y + pad) - Math.max(0, y - pad) + 1;
+            int[] out = target.pixels;
+            int offset = target.rowStart(y) + x0;
+            for (int i = 0; i < regionWidth; i++) {
+                int pixelCount = rowCount * columnCount[i];
+                out[offset + i] =
+                    ((int) (redSum[i] / pixelCount) << 16) |
+                    ((int) (greenSum[i] / pixelCount) << 8) |
+                    (int) (blueSum[i] / pixelCount);
+            }
+
+            // Slide the window down: add the row entering at the bottom, drop the one leaving at the top
+            if (y + 1 < y1 && y + pad + 1 < height) {
+                addRow(rowRed, rowGreen, rowBlue, (y + pad + 1 - firstRow) * regionWidth, regionWidth, redSum, greenSum, blueSum, 1);
+            }
+            if (y + 1 < y1 && y - pad >= 0) {
+                addRow(rowRed, rowGreen, rowBlue, (y - pad - firstRow) * regionWidth, regionWidth, redSum, greenSum, blueSum, -1);
+            }
+        }
+    }
+
+    /**
+     * Adds (sign = 1) or removes (sign = -1) one row of horizontal sums from the column sums
+     */
+    private static void addRow(int[] rowRed, int[] rowGreen, int[] rowBlue, int base, int width,
+                               long[] redSum, long[] greenSum, long[] blueSum, int sign) {
+        for (int x = 0; x < width; x++) {
+            redSum[x] += sign * rowRed[base + x];
+            greenSum[x] += sign * rowGreen[base + x];
+            blueSum[x] += sign * rowBlue[base + x];
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import java.util.Arrays;
+
+/**
+ * Per-channel median over a kernelSize x kernelSize window in constant time per
+ * pixel, after Perreault and Hébert, "Median Filtering in Constant Time" (2007).
+ * 
+ * <p>Each column of the tile (plus the halo) keeps a histogram of the rows in the
+ * window, which moves down by removing one row and adding one. Along a row, the
+ * window histogram moves right by subtracting the column histogram that leaves
+ * and adding the one that enters. Histograms have two levels: 16 coarse bins of
+ * 16 values each, always kept current, and 256 fine bins, brought up to date
+ * only for the coarse bin that holds the median. Finding the median takes at most
+ * 16 + 16 steps, whatever the kernel size.</p>
+ * 
+ * <p>Windows are clipped at the image border; with an even number of in-bounds
+ * neighbours the lower of the two middle values is used.</p>
+ */
+final class MedianKernel implements FilterKernel {
+    private final int radius;
+
+    MedianKernel(int kernelSize) {
+        if (kernelSize < 1) {
+            throw new IllegalArgumentException("kernelSize must be positive");
+        }
+        this.radius = kernelSize / 2;
+    }
+
+    @Override
+    public int radius() {
+        return radius;
+    }
+
+    @Override
+    public void filterRegion(PixelRows source, PixelRows target, int x0, int y0, int x1, int y1) {
+        int[] pixels = source.pixels;
+        int width = source.width;
+        int height = source.imageHeight;
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        // Columns that have a histogram: the region plus the halo on each side
+        int firstColumn = Math.max(0, x0 - radius);
+        int lastColumn = Math.min(width - 1, x1 - 1 + radius);
+        TileScratch scratch = TileScratch.get();
+        Channel[] channels = {
+            new Channel(16, firstColumn, lastColumn, scratch, 0),
+            new Channel(8, firstColumn, lastColumn, scratch, 5),
+            new Channel(0, firstColumn, lastColumn, scratch, 10)
+        };
+
+        // Column histograms start with the window of y0
+        for (int y = Math.max(0, y0 - radius); y <= Math.min(height - 1, y0 + radius); y++) {
+            for (Channel channel : channels) {
+                channel.addRow(pixels, source.rowStart(y), 1);
+            }
+        }
+
+        for (int y = y0; y < y1; y++) {
+            int rows = Math.min(height - 1, y + radius) - Math.max(0, y - radius) + 1;
+            for (Channel channel : channels) {
+                channel.startRow(x0, width);
+            }
+            int out = target.rowStart(y);
+            for (int x = x0; x < x1; x++) {
+                if (x > x0) {
+                    for (Channel channel : channels) {
+                        channel.slide(x, width);
+                    }
+                }
+                int columns = Math.min(width - 1, x + radius) - Math.max(0, x - radius) + 1;
+                int rank = (rows * columns - 1) / 2;
+                int rgb = 0;
+                for (Channel channel : channels) {
+                    rgb |= channel.median(rank, x, width) << channel.shift;
+                }
+                target.pixels[out + x] = rgb;
+            }
+
+            // Slide the column histograms down: drop the top row, add the one entering below
+            if (y + 1 < y1) {
+                for (Channel channel : channels) {
+                    if (y - radius >= 0) {
+                        channel.addRow(pixels, source.rowStart(y - radius), -1);
+                    }
+                    if (y + 1 + radius < height) {
+                        channel.addRow(pixels, source.rowStart(y + 1 + radius), 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Column and window histograms of one colour channel
+     */
+    private final class Channel {
+        final int shift;
+        final int firstColumn;
+        final int lastColumn;
+
+        // Per column: 256 fine bins and 16 coarse bins, indexed from firstColumn
+        final int[] columnFine;
+        final int[] columnCoarse;
+
+        // Window histogram; fine bins of coarse bin b are current for the window of column synced[b]
+        final int[] fine;
+        final int[] coarse;
+        final int[] synced;
+
+        /**
+         * @param scratch Worker scratch the histograms live in
+         * @param slot    First of the five scratch slots this channel uses
+         */
+        Channel(int shift, int firstColumn, int lastColumn, TileScratch scratch, int slot) {
+            this.shift = shift;
+            this.firstColumn = firstColumn;
+            this.lastColumn = lastColumn;
+            int columns = lastColumn - firstColumn + 1;
+            this.columnFine = scratch.zeroedInts(slot, columns * 256);
+            this.columnCoarse = scratch.zeroedInts(slot + 1, columns * 16);
+            this.fine = scratch.ints(slot + 2, 256);
+            this.coarse = scratch.ints(slot + 3, 16);
+            this.synced = scratch.ints(slot + 4, 16);
+        }
+
+        /**
+         * Adds (sign = 1) or removes (sign = -1) one source row from the column histograms
+         */
+        void addRow(int[] pixels, int line, int sign) {
+            for (int x = firstColumn; x <= lastColumn; x++) {
+                int value = (pixels[line + x] >> shift) & 0xFF;
+                int column = x - firstColumn;
+                columnFine[column * 256 + value] += sign;
+                columnCoarse[column * 16 + (value >> 4)] += sign;
+            }
+        }
+
+        /**
+         * Builds the coarse window histogram for column x; fine bins are rebuilt on demand
+         */
+        void startRow(int x, int width) {
+            Arrays.fill(coarse, 0);
+            // Far enough behind that the first lookup of each bin rebuilds it
+            Arrays.fill(synced, x - 2 * radius - 2);
+            for (int c = Math.max(0, x - radius); c <= Math.min(width - 1, x + radius); c++) {
+                addColumn(coarse, 0, columnCoarse, (c - firstColumn) * 16, 1);
+            }
+        }
+
+        /**
+         * Moves the coarse window histogram from column x - 1 to column x
+         */
+        void slide(int x, int width) {
+            if (x - radius - 1 >= 0) {
+                addColumn(coarse, 0, columnCoarse, (x - radius - 1 - firstColumn) * 16, -1);
+            }
+            if (x + radius < width) {
+                addColumn(coarse, 0, columnCoarse, (x + radius - firstColumn) * 16, 1);
+            }
+        }
+
+        /**
+         * Returns the value of the given rank (0 = smallest) in the window of column x
+         */
+        int median(int rank, int x, int width) {
+            int bin = 0;
+            int below = 0;
+            while (below + coarse[bin] <= rank) {
+                below += coarse[bin];
+                bin++;
+            }
+            syncFine(bin, x, width);
+            int value = bin * 16;
+            while (below + fine[value] <= rank) {
+                below += fine[value];
+                value++;
+            }
+            return value;
+        }
+
+        /**
+         * Brings the 16 fine bins of a coarse bin up to date with the window of column x,
+         * either column by column or from scratch when that touches fewer columns
+         */
+        private void syncFine(int bin, int x, int width) {
+            int from = synced[bin];
+            if (from == x) {
+                return;
+            }
+            int offset = bin * 16;
+            if (x - from > 2 * radius + 1) {
+                Arrays.fill(fine, offset, offset + 16, 0);
+                for (int c = Math.max(0, x - radius); c <= Math.min(width - 1, x + radius); c++) {
+                    addColumn(fine, offset, columnFine, (c - firstColumn) * 256 + offset, 1);
+                }
+            } else {
+                for (int step = from + 1; step <= x; step++) {
+                    if (step - radius - 1 >= 0) {
+                        addColumn(fine, offset, columnFine, (step - radius - 1 - firstColumn) * 256 + offset, -1);
+                    }
+                    if (step + radius < width) {
+                        addColumn(fine, offset, columnFine, (step + radius - firstColumn) * 256 + offset, 1);
+                    }
+                }
+            }
+            synced[bin] = x;
+        }
+
+        /**
+         * Adds sign times 16 bins of a column histogram to the window histogram
+         */
+        private void addColumn(int[] window, int windowStart, int[] column, int columnStart, int sign) {
+            for (int i = 0; i < 16; i++) {
+                window[windowStart + i] += sign * column[columnStart + i];
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * A horizontal band of an image held in memory: rows [firstRow, firstRow + rowCount)
+ * of an image that is width x imageHeight pixels in total, packed as 0xRRGGBB, row-major.
+ * 
+ * <p>A whole image is simply the band that starts at row 0 and holds every row. Filters
+ * clip their windows against imageHeight, not against the band, so a band that carries
+ * kernelSize / 2 halo rows above and below its output rows gives the same result as
+ * the whole image.</p>
+ */
+final class PixelRows {
+    final int[] pixels;
+    final int width;
+    final int imageHeight;
+    final int firstRow;
+
+    PixelRows(int[] pixels, int width, int imageHeight, int firstRow) {
+        this.pixels = pixels;
+        this.width = width;
+        this.imageHeight = imageHeight;
+        this.firstRow = firstRow;
+    }
+
+    /**
+     * Wraps a whole image
+     */
+    static PixelRows of(int[] pixels, int width, int height) {
+        return new PixelRows(pixels, width, height, 0);
+    }
+
+    /**
+     * Index in pixels of image row y, column 0
+     */
+    int rowStart(int y) {
+        return (y - firstRow) * width;
+    }
+}
@@ -0,0 +1,208 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Filtered previews of a large image at interactive speed, refined to full
+ * resolution in the background. The filter is a mean unless another kernel family
+ * is given.
+ *
+ * <p>The constructor builds a mipmap pyramid once: each level halves the previous
+ * one by averaging 2x2 blocks. A preview is filtered on the smallest level that is
+ * still at least as large as the requested size, with the kernel scaled down by
+ * the same factor, and then scaled to the requested size. A kernelSize x kernelSize
+ * mean at full resolution becomes roughly a (kernelSize / 2^level) box on level
+ * {@code level}, so the work drops by about 4^level.</p>
+ *
+ * <p>The scaled kernel is rounded to a whole number of pixels, and coarse levels
+ * lose detail the kernel would have kept; the {@code detail} argument trades speed
+ * for accuracy by filtering that many levels finer than needed. {@link #refine}
+ * then walks down to level 0, delivering each finer result, and completes with
+ * exactly what the full-size kernel produces, {@link ImageMeanFilter#applyMeanFilter}'s
+ * output for the mean.</p>
+ *
+ * <p>Usage example:</p>
+ * <pre>
+ * {@code
+ * try (PreviewFilter preview = new PreviewFilter(image, 31, 8)) {
+ *     show(preview.preview(800, 600, 0));
+ *     preview.refine(800, 600, this::show).thenAccept(this::save);
+ * }
+ * }
+ * </pre>
+ */
+public class PreviewFilter implements AutoCloseable {
+    // Levels stop shrinking once both sides are this small
+    private static final int SMALLEST_LEVEL = 16;
+
+    private final IntFunction<FilterKernel> kernels;
+    private final int kernelSize;
+    private final ForkJoinPool pool;
+    private final List<BufferedImage> levels = new ArrayList<>();
+
+    /**
+     * @param image      Full-resolution source image
+     * @param kernelSize Size of mean kernel at full resolution
+     * @param numThreads Number of worker threads, kept until close()
+     */
+    public PreviewFilter(BufferedImage image, int kernelSize, int numThreads) {
+        this(image, FilterKernel::mean, kernelSize, numThreads);
+    }
+
+    /**
+     * @param image      Full-resolution source image
+     * @param kernels    Kernel of the given odd size, such as FilterKernel::median;
+     *                   asked for a smaller one on each coarser level
+     * @param kernelSize Kernel size at full resolution
+     * @param numThreads Number of worker threads, kept until close()
+     */
+    public PreviewFilter(BufferedImage image, IntFunction<FilterKernel> kernels, int kernelSize, int numThreads) {
+        if (kernelSize < 1 || numThreads < 1) {
+            throw new IllegalArgumentException("kernelSize and numThreads must be positive");
+        }
+        this.kernels = kernels;
+        this.kernelSize = kernelSize;
+        this.pool = new ForkJoinPool(numThreads);
+
+        // Every level is packed RGB, so halving and filtering read the int[] directly
+        BufferedImage level = ImageMeanFilter.toIntRgb(image);
+        levels.add(level);
+        while (level.getWidth() > SMALLEST_LEVEL || level.getHeight() > SMALLEST_LEVEL) {
+            level = halve(level);
+            levels.add(level);
+        }
+    }
+
+    /**
+     * Number of pyramid levels; level 0 is the full-resolution image
+     */
+    public int levels() {
+        return levels.size();
+    }
+
+    /**
+     * Filters a preview of the image
+     *
+     * @param width  Requested preview width
+     * @param height Requested preview height
+     * @param detail Levels to go finer than the smallest one covering the requested
+     *               size; 0 is fastest, each step costs about 4x more and is more accurate
+     * @return Filtered preview of exactly width x height pixels
+     */
+    public BufferedImage preview(int width, int height, int detail) {
+        return scale(filterLevel(previewLevel(width, height, detail)), width, height);
+    }
+
+    /**
+     * Filters successively finer levels in the background, from the one below the
+     * preview's down to full resolution
+     *
+     * @param width      Width of the intermediate results
+     * @param height     Height of the intermediate results
+     * @param onProgress Receives each intermediate result, scaled to width x height, on a worker thread; may be null
+     * @return Completes with the full-resolution filtered image; cancelling it stops after the current level
+     */
+    public CompletableFuture<BufferedImage> refine(int width, int height, Consumer<BufferedImage> onProgress) {
+        int start = previewLevel(width, height, 0);
+        CompletableFuture<BufferedImage> result = new CompletableFuture<>();
+        pool.execute(() -> {
+            try {
+                for (int level = start - 1; level > 0 && !result.isDone(); level--) {
+                    BufferedImage filtered = filterLevel(level);
+                    if (onProgress != null) {
+                        onProgress.accept(scale(filtered, width, height));
+                    }
+                }
+                if (!result.isDone()) {
+                    result.complete(filterLevel(0));
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Stops the worker threads once the refinement in progress has finished
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Smallest level whose both sides are still at least the requested size, minus detail
+     */
+    private int previewLevel(int width, int height, int detail) {
+        if (width < 1 || height < 1 || detail < 0) {
+            throw new IllegalArgumentException("width and height must be positive, detail not negative");
+        }
+        int level = 0;
+        while (level + 1 < levels.size()
+               && levels.get(level + 1).getWidth() >= width && levels.get(level + 1).getHeight() >= height) {
+            level++;
+        }
+        return Math.max(0, level - detail);
+    }
+
+    /**
+     * Filters one level with the kernel scaled to it. Keeps the full-resolution
+     * radius semantics: a radius of kernelSize / 2 pixels becomes a radius of
+     * (kernelSize / 2) / 2^level pixels, rounded.
+     */
+    private BufferedImage filterLevel(int level) {
+        int radius = Math.round((kernelSize / 2) / (float) (1 << level));
+        return ImageMeanFilter.filter(levels.get(level), kernels.apply(2 * radius + 1), pool,
+                                      ImageMeanFilter.DEFAULT_TILE_SIZE, null);
+    }
+
+    /**
+     * Averages each 2x2 block into one pixel; odd edges average the pixels they have
+     */
+    private BufferedImage halve(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] source = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int halfWidth = (width + 1) / 2;
+        int halfHeight = (height + 1) / 2;
+        BufferedImage half = new BufferedImage(halfWidth, halfHeight, BufferedImage.TYPE_INT_RGB);
+        int[] target = ((DataBufferInt) half.getRaster().getDataBuffer()).getData();
+
+        IndexRange.forEach(pool, halfHeight, y -> {
+            int top = 2 * y * width;
+            int bottom = 2 * y + 1 < height ? top + width : top;
+            for (int x = 0; x < halfWidth; x++) {
+                int left = 2 * x;
+                int right = left + 1 < width ? left + 1 : left;
+                int a = source[top + left], b = source[top + right];
+                int c = source[bottom + left], d = source[bottom + right];
+                // Duplicated edge pixels weigh the same as the ones they stand for
+                int red = ((a >> 16) & 0xFF) + ((b >> 16) & 0xFF) + ((c >> 16) & 0xFF) + ((d >> 16) & 0xFF);
+                int green = ((a >> 8) & 0xFF) + ((b >> 8) & 0xFF) + ((c >> 8) & 0xFF) + ((d >> 8) & 0xFF);
+                int blue = (a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF);
+                target[y * halfWidth + x] = ((red + 2) / 4 << 16) | ((green + 2) / 4 << 8) | (blue + 2) / 4;
+            }
+        });
+        return half;
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        if (image.getWidth() == width && image.getHeight() == height) {
+            return image;
+        }
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return scaled;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Weighted blur whose 2D weights are the product of one 1D weight vector along
+ * each axis, such as a Gaussian. Filtering takes a horizontal pass and a vertical
+ * pass, 2 * (2 * radius + 1) multiplications per pixel instead of (2 * radius + 1)^2.
+ * 
+ * <p>Near the border each pass divides by the sum of the in-bounds weights only,
+ * which matches dividing the clipped 2D window by its own weight.</p>
+ */
+final class SeparableKernel implements FilterKernel {
+    private final int radius;
+    private final float[] weights;
+
+    /**
+     * @param weights Odd number of non-negative weights, centred on the output pixel
+     */
+    SeparableKernel(double[] weights) {
+        if (weights.length % 2 == 0) {
+            throw new IllegalArgumentException("Kernel size must be odd");
+        }
+        this.radius = weights.length / 2;
+        this.weights = new float[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            this.weights[i] = (float) weights[i];
+        }
+    }
+
+    @Override
+    public int radius() {
+        return radius;
+    }
+
+    @Override
+    public void filterRegion(PixelRows source, PixelRows target, int x0, int y0, int x1, int y1) {
+        int[] pixels = source.pixels;
+        int width = source.width;
+        int height = source.imageHeight;
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        int regionWidth = x1 - x0;
+        int firstRow = Math.max(0, y0 - radius);
+        int lastRow = Math.min(height - 1, y1 - 1 + radius);
+
+        // Horizontal pass: weighted means of each row around x, for x in the region
+        int rows = lastRow - firstRow + 1;
+        TileScratch scratch = TileScratch.get();
+        float[] red = scratch.floats(0, rows * regionWidth);
+        float[] green = scratch.floats(1, rows * regionWidth);
+        float[] blue = scratch.floats(2, rows * regionWidth);
+        for (int y = firstRow; y <= lastRow; y++) {
+            int line = source.rowStart(y);
+            int base = (y - firstRow) * regionWidth - x0;
+            for (int x = x0; x < x1; x++) {
+                float r = 0, g = 0, b = 0, weight = 0;
+                for (int i = Math.max(-radius, -x); i <= Math.min(radius, width - 1 - x); i++) {
+                    int rgb = pixels[line + x + i];
+                    float w = weights[i + radius];
+                    r += w * ((rgb >> 16) & 0xFF);
+                    g += w * ((rgb >> 8) & 0xFF);
+                    b += w * (rgb & 0xFF);
+                    weight += w;
+                }
+                red[base + x] = r / weight;
+                green[base + x] = g / weight;
+                blue[base + x] = b / weight;
+            }
+        }
+
+        // Vertical pass over the row means
+        for (int y = y0; y < y1; y++) {
+            int out = target.rowStart(y);
+            int from = Math.max(-radius, -y);
+            int to = Math.min(radius, height - 1 - y);
+            float weight = 0;
+            for (int i = from; i <= to; i++) {
+                weight += weights[i + radius];
+            }
+            for (int x = x0; x < x1; x++) {
+                float r = 0, g = 0, b = 0;
+                for (int i = from; i <= to; i++) {
+                    int index = (y + i - firstRow) * regionWidth + x - x0;
+                    float w = weights[i + radius];
+                    r += w * red[index];
+                    g += w * green[index];
+                    b += w * blue[index];
+                }
+                target.pixels[out + x] = (round(r / weight) << 16) | (round(g / weight) << 8) | round(b / weight);
+            }
+        }
+    }
+
+    private static int round(float value) {
+        return Math.min(255, (int) (value + 0.5f));
+    }
+}
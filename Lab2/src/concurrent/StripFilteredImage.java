@@ -0,0 +1,249 @@
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+
+/**
+ * The filtered version of an image, produced one horizontal strip at a time
+ * as an image writer asks for its rows.
+ *
+ * <p>Only one strip of source rows (plus kernel.radius() halo rows above and below)
+ * and one strip of output rows are held in memory. When the writer moves on to the
+ * next strip, the halo rows already decoded are kept and only the new rows are read
+ * from the {@link ImageReader} with {@link ImageReadParam#setSourceRegion}. Each strip
+ * is filtered in parallel as tiles on the given pool.</p>
+ *
+ * <p>Writers that pull rows from top to bottom (PNG, TIFF) touch each strip once.
+ * Asking for rows out of order still works but decodes strips again.</p>
+ */
+final class StripFilteredImage implements RenderedImage {
+    private static final ColorModel COLOR_MODEL = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+
+    private final ImageReader reader;
+    private final int width;
+    private final int height;
+    private final FilterKernel kernel;
+    private final int stripHeight;
+    private final ForkJoinPool pool;
+
+    // Source rows [sourceFirst, sourceFirst + sourceRows), halo included
+    private final int[] source;
+    private int sourceFirst;
+    private int sourceRows;
+
+    // Filtered rows of the current strip
+    private final int[] target;
+    private int currentStrip = -1;
+
+    /**
+     * @param reader      Reader with its input already set; image 0 is filtered
+     * @param kernel      Filter to apply
+     * @param stripHeight Output rows per strip
+     * @param pool        Pool that filters the tiles of each strip
+     * @throws IOException If the image size cannot be read
+     */
+    StripFilteredImage(ImageReader reader, FilterKernel kernel, int stripHeight, ForkJoinPool pool) throws IOException {
+        this.reader = reader;
+        this.width = reader.getWidth(0);
+        this.height = reader.getHeight(0);
+        this.kernel = kernel;
+        this.stripHeight = Math.min(stripHeight, height);
+        this.pool = pool;
+
+        int pad = kernel.radius();
+        this.source = new int[Math.min(height, this.stripHeight + 2 * pad) * width];
+        this.target = new int[this.stripHeight * width];
+    }
+
+    @Override
+    public synchronized Raster getData(Rectangle region) {
+        WritableRaster raster = createRaster(region.width, region.height, region.x, region.y);
+        copyRows(region, raster);
+        return raster;
+    }
+
+    @Override
+    public Raster getData() {
+        return getData(new Rectangle(0, 0, width, height));
+    }
+
+    @Override
+    public Raster getTile(int tileX, int tileY) {
+        int top = tileY * stripHeight;
+        return getData(new Rectangle(0, top, width, Math.min(stripHeight, height - top)));
+    }
+
+    @Override
+    public synchronized WritableRaster copyData(WritableRaster raster) {
+        if (raster == null) {
+            raster = createRaster(width, height, 0, 0);
+        }
+        Rectangle region = raster.getBounds().intersection(new Rectangle(0, 0, width, height));
+        WritableRaster rows = createRaster(region.width, region.height, region.x, region.y);
+        copyRows(region, rows);
+        raster.setRect(rows);
+        return raster;
+    }
+
+    private static WritableRaster createRaster(int width, int height, int x, int y) {
+        return Raster.createPackedRaster(DataBuffer.TYPE_INT, width, height,
+            new int[] {0xFF0000, 0xFF00, 0xFF}, new Point(x, y));
+    }
+
+    /**
+     * Copies the filtered pixels of region into a packed raster with the same bounds
+     */
+    private void copyRows(Rectangle region, WritableRaster raster) {
+        int[] out = ((DataBufferInt) raster.getDataBuffer()).getData();
+        for (int y = region.y; y < region.y + region.height; y++) {
+            loadStrip(y / stripHeight);
+            int from = (y - currentStrip * stripHeight) * width + region.x;
+            System.arraycopy(target, from, out, (y - region.y) * region.width, region.width);
+        }
+    }
+
+    /**
+     * Makes the given strip the current one: reads the source rows it is still
+     * missing and filters it
+     */
+    private void loadStrip(int strip) {
+        if (strip == currentStrip) {
+            return;
+        }
+        int pad = kernel.radius();
+        int top = strip * stripHeight;
+        int bottom = Math.min(height, top + stripHeight);
+        int first = Math.max(0, top - pad);
+        int last = Math.min(height, bottom + pad);
+
+        try {
+            // Keep the rows the previous window already has (the halo between the strips)
+            int kept = 0;
+            if (sourceRows > 0 && first >= sourceFirst && first < sourceFirst + sourceRows) {
+                kept = Math.min(last, sourceFirst + sourceRows) - first;
+                System.arraycopy(source, (first - sourceFirst) * width, source, 0, kept * width);
+            }
+            if (first + kept < last) {
+                readRows(first + kept, last, kept * width);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        sourceFirst = first;
+        sourceRows = last - first;
+
+        pool.invoke(new ImageMeanFilter.TileTask(
+            new PixelRows(source, width, height, first), new PixelRows(target, width, height, top),
+            0, top, width, bottom, kernel, ImageMeanFilter.DEFAULT_TILE_SIZE, null));
+        currentStrip = strip;
+    }
+
+    /**
+     * Decodes source rows [from, to) into source, starting at offset
+     */
+    private void readRows(int from, int to, int offset) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, from, width, to - from));
+        BufferedImage rows = reader.read(0, param);
+        rows.getRGB(0, 0, width, to - from, source, offset, width);
+    }
+
+    @Override
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return Image.UndefinedProperty;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return null;
+    }
+
+    @Override
+    public ColorModel getColorModel() {
+        return COLOR_MODEL;
+    }
+
+    @Override
+    public SampleModel getSampleModel() {
+        return COLOR_MODEL.createCompatibleSampleModel(width, stripHeight);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getMinX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinY() {
+        return 0;
+    }
+
+    @Override
+    public int getNumXTiles() {
+        return 1;
+    }
+
+    @Override
+    public int getNumYTiles() {
+        return (height + stripHeight - 1) / stripHeight;
+    }
+
+    @Override
+    public int getMinTileX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinTileY() {
+        return 0;
+    }
+
+    @Override
+    public int getTileWidth() {
+        return width;
+    }
+
+    @Override
+    public int getTileHeight() {
+        return stripHeight;
+    }
+
+    @Override
+    public int getTileGridXOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getTileGridYOffset() {
+        return 0;
+    }
+}
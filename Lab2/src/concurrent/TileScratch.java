@@ -0,0 +1,76 @@
+import java.util.Arrays;
+
+/**
+ * Scratch arrays kept per worker thread, so a kernel filtering tile after tile
+ * on the same thread reuses its working memory instead of allocating it again.
+ * 
+ * <p>Arrays only ever grow and come back with whatever the previous tile left in
+ * them: callers may get a longer array than asked for, must index only the part
+ * they asked for, and must clear anything they accumulate into. A kernel may not
+ * hand its scratch arrays to another thread or keep them after filterRegion returns.</p>
+ */
+final class TileScratch {
+    private static final int SLOTS = 16;
+    private static final ThreadLocal<TileScratch> CURRENT = ThreadLocal.withInitial(TileScratch::new);
+
+    private final int[][] ints = new int[SLOTS][];
+    private final long[][] longs = new long[SLOTS][];
+    private final float[][] floats = new float[SLOTS][];
+
+    private TileScratch() {
+    }
+
+    /**
+     * Returns the scratch arrays of the calling thread
+     */
+    static TileScratch get() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns an int[] of at least length elements, with stale contents
+     * 
+     * @param slot   Index telling apart the arrays one kernel uses at the same time, below 16
+     * @param length Elements needed
+     */
+    int[] ints(int slot, int length) {
+        int[] array = ints[slot];
+        if (array == null || array.length < length) {
+            array = ints[slot] = new int[length];
+        }
+        return array;
+    }
+
+    /**
+     * Returns an int[] whose first length elements are zero
+     */
+    int[] zeroedInts(int slot, int length) {
+        int[] array = ints(slot, length);
+        Arrays.fill(array, 0, length, 0);
+        return array;
+    }
+
+    /**
+     * Returns a long[] whose first length elements are zero
+     */
+    long[] zeroedLongs(int slot, int length) {
+        long[] array = longs[slot];
+        if (array == null || array.length < length) {
+            array = longs[slot] = new long[length];
+        } else {
+            Arrays.fill(array, 0, length, 0L);
+        }
+        return array;
+    }
+
+    /**
+     * Returns a float[] of at least length elements, with stale contents
+     */
+    float[] floats(int slot, int length) {
+        float[] array = floats[slot];
+        if (array == null || array.length < length) {
+            array = floats[slot] = new float[length];
+        }
+        return array;
+    }
+}
@@ -43,18 +43,12 @@ public class ImageMeanFilter {
         // Image processing
         int width = originalImage.getWidth();
         int height = originalImage.getHeight();
-        // Process each pixel
+        int[] filtered = filterRows(originalImage, 0, height, kernelSize);
+
+        // Set filtered pixels
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
-                // Calculate neighborhood average
-                int[] avgColor = calculateNeighborhoodAverage(originalImage, x, y, kernelSize);
-                
-                // Set filtered pixel
-                filteredImage.setRGB(x, y, 
-                    (avgColor[0] << 16) | 
-                    (avgColor[1] << 8)  | 
-                    avgColor[2]
-                );
+                filteredImage.setRGB(x, y, filtered[y * width + x]);
             }
         }
         
@@ -63,54 +57,108 @@ public class ImageMeanFilter {
     }
     
     /**
-     * Calculates average colors in a pixel's neighborhood
-     * 
+     * Calculates the neighborhood average of every pixel in rows [startRow, endRow)
+     * with a sliding window (see the concurrent version's MeanKernel)
+     *
      * @param image      Source image
-     * @param centerX    X coordinate of center pixel
-     * @param centerY    Y coordinate of center pixel
+     * @param startRow   First row to compute (inclusive)
+     * @param endRow     Last row to compute (exclusive)
      * @param kernelSize Kernel size
-     * @return Array with R, G, B averages
+     * @return Averaged pixels packed as RGB, row-major, width * (endRow - startRow) values
      */
-    private static int[] calculateNeighborhoodAverage(BufferedImage image, int centerX, int centerY, int kernelSize) {
+    private static int[] filterRows(BufferedImage image, int startRow, int endRow, int kernelSize) {
         int width = image.getWidth();
         int height = image.getHeight();
         int pad = kernelSize / 2;
-        
-        // Arrays for color sums
-        long redSum = 0, greenSum = 0, blueSum = 0;
-        int pixelCount = 0;
-        
-        // Process neighborhood
-        for (int dy = -pad; dy <= pad; dy++) {
-            for (int dx = -pad; dx <= pad; dx++) {
-                int x = centerX + dx;
-                int y = centerY + dy;
-                
-                // Check image bounds
-                if (x >= 0 && x < width && y >= 0 && y < height) {
-                    // Get pixel color
-                    int rgb = image.getRGB(x, y);
-                    
-                    // Extract color components
-                    int red = (rgb >> 16) & 0xFF;
-                    int green = (rgb >> 8) & 0xFF;
-                    int blue = rgb & 0xFF;
-                    
-                    // Sum colors
-                    redSum += red;
-                    greenSum += green;
-                    blueSum += blue;
-                    pixelCount++;
+        if (startRow >= endRow) {
+            return new int[0];
+        }
+
+        // Rows read by the vertical window, including the halo above and below
+        int firstRow = Math.max(0, startRow - pad);
+        int lastRow = Math.min(height - 1, endRow - 1 + pad);
+
+        // Horizontal pass: per-channel sums of each row over [x - pad, x + pad]
+        int rows = lastRow - firstRow + 1;
+        int[] rowRed = new int[rows * width];
+        int[] rowGreen = new int[rows * width];
+        int[] rowBlue = new int[rows * width];
+        for (int y = firstRow; y <= lastRow; y++) {
+            int base = (y - firstRow) * width;
+            int redSum = 0, greenSum = 0, blueSum = 0;
+            for (int x = 0; x <= Math.min(pad - 1, width - 1); x++) {
+                int rgb = image.getRGB(x, y);
+                redSum += (rgb >> 16) & 0xFF;
+                greenSum += (rgb >> 8) & 0xFF;
+                blueSum += rgb & 0xFF;
+            }
+            for (int x = 0; x < width; x++) {
+                // Slide the window: add the column entering on the right, drop the one leaving on the left
+                if (x + pad < width) {
+                    int rgb = image.getRGB(x + pad, y);
+                    redSum += (rgb >> 16) & 0xFF;
+                    greenSum += (rgb >> 8) & 0xFF;
+                    blueSum += rgb & 0xFF;
                 }
+                if (x - pad - 1 >= 0) {
+                    int rgb = image.getRGB(x - pad - 1, y);
+                    redSum -= (rgb >> 16) & 0xFF;
+                    greenSum -= (rgb >> 8) & 0xFF;
+                    blueSum -= rgb & 0xFF;
+                }
+                rowRed[base + x] = redSum;
+                rowGreen[base + x] = greenSum;
+                rowBlue[base + x] = blueSum;
             }
         }
-        
-        // Calculate average
-        return new int[] {
-            (int)(redSum / pixelCount),
-            (int)(greenSum / pixelCount),
-            (int)(blueSum / pixelCount)
-        };
+
+        // Number of in-bounds columns of the window centered on each x
+        int[] columnCount = new int[width];
+        for (int x = 0; x < width; x++) {
+            columnCount[x] = Math.min(width - 1, x + pad) - Math.max(0, x - pad) + 1;
+        }
+
+        // Vertical pass: running sums of the row sums over [y - pad, y + pad]
+        long[] redSum = new long[width];
+        long[] greenSum = new long[width];
+        long[] blueSum = new long[width];
+        for (int y = firstRow; y <= Math.min(height - 1, startRow + pad); y++) {
+            addRow(rowRed, rowGreen, rowBlue, (y - firstRow) * width, width, redSum, greenSum, blueSum, 1);
+        }
+
+        int[] result = new int[(endRow - startRow) * width];
+        for (int y = startRow; y < endRow; y++) {
+            int rowCount = Math.min(height - 1, y + pad) - Math.max(0, y - pad) + 1;
+            int out = (y - startRow) * width;
+            for (int x = 0; x < width; x++) {
+                int pixelCount = rowCount * columnCount[x];
+                result[out + x] =
+                    ((int) (redSum[x] / pixelCount) << 16) |
+                    ((int) (greenSum[x] / pixelCount) << 8) |
+                    (int) (blueSum[x] / pixelCount);
+            }
+
+            // Slide the window down: add the row entering at the bottom, drop the one leaving at the top
+            if (y + 1 < endRow && y + pad + 1 < height) {
+                addRow(rowRed, rowGreen, rowBlue, (y + pad + 1 - firstRow) * width, width, redSum, greenSum, blueSum, 1);
+            }
+            if (y + 1 < endRow && y - pad >= 0) {
+                addRow(rowRed, rowGreen, rowBlue, (y - pad - firstRow) * width, width, redSum, greenSum, blueSum, -1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds (sign = 1) or removes (sign = -1) one row of horizontal sums from the column sums
+     */
+    private static void addRow(int[] rowRed, int[] rowGreen, int[] rowBlue, int base, int width,
+                               long[] redSum, long[] greenSum, long[] blueSum, int sign) {
+        for (int x = 0; x < width; x++) {
+            redSum[x] += sign * rowRed[base + x];
+            greenSum[x] += sign * rowGreen[base + x];
+            blueSum[x] += sign * rowBlue[base + x];
+        }
     }
     
     /**
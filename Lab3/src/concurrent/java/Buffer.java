@@ -1,25 +1,37 @@
-import java.util.LinkedList;
+// Bounded queue shared by producers and consumers.
+// put blocks while the buffer is full, remove blocks while it is empty.
+interface Buffer {
+    void put(int value) throws InterruptedException;
 
-class Buffer {
-    private final LinkedList<Integer> data = new LinkedList<>();
-    private final int capacity = 100;
+    int remove() throws InterruptedException;
 
-    public synchronized void put(int value) throws InterruptedException {
-        while (data.size() >= capacity) {
-            wait();  
-        }
-        data.add(value);
-        System.out.println("Inserted: " + value + " | Buffer size: " + data.size());
-        notifyAll(); 
-    }
+    // Inserts items[off .. off + len), as many as fit per acquisition, and blocks until all are in
+    void putAll(int[] items, int off, int len) throws InterruptedException;
+
+    // Blocks until the buffer has an item, then moves up to max items into dst; returns how many.
+    // Returns 0 at once, without waiting, when max is 0 or less.
+    int drainTo(int[] dst, int max) throws InterruptedException;
+
+    // Counters kept by the buffer, readable while it runs
+    BufferMetrics metrics();
 
-    public synchronized int remove() throws InterruptedException {
-        while (data.isEmpty()) {
-            wait();  
+    // "monitor":              LinkedList guarded by synchronized/wait/notifyAll
+    // "ring[:<strategy>]":    lock-free int[] ring (RingBuffer) waiting with the given
+    //                         WaitStrategy: condition, spin-park (default), yield or busy-spin
+    // "striped[:<strategy>]": one ring lane per producer, consumers steal (StripedBuffer)
+    static Buffer create(String type, int capacity, int producers) {
+        String[] parts = type.split(":", 2);
+        String strategy = parts.length > 1 ? parts[1] : "spin-park";
+        switch (parts[0]) {
+            case "monitor":
+                return new MonitorBuffer(capacity);
+            case "ring":
+                return new RingBuffer(capacity, WaitStrategy.create(strategy));
+            case "striped":
+                return new StripedBuffer(capacity, Math.max(1, producers), WaitStrategy.create(strategy));
+            default:
+                throw new IllegalArgumentException("Unknown buffer type: " + type
+                        + " (use monitor, ring[:<strategy>] or striped[:<strategy>])");
         }
-        int value = data.removeFirst();
-        System.out.println("Removed: " + value + " | Buffer size: " + data.size());
-        notifyAll();  
-        return value;
     }
 }
@@ -0,0 +1,57 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// Always-on counters of one buffer. LongAdder keeps a cell per contending thread, so
+// counting does not add a shared hot spot; the getters may be read while the buffer runs.
+class BufferMetrics {
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder removes = new LongAdder();
+    private final LongAdder fullWaits = new LongAdder();
+    private final LongAdder emptyWaits = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+
+    public void put(int items) {
+        puts.add(items);
+    }
+
+    public void removed(int items) {
+        removes.add(items);
+    }
+
+    // One call that found the buffer full and waited this long for space
+    public void waitedFull(long nanos) {
+        fullWaits.increment();
+        blockedNanos.add(nanos);
+    }
+
+    // One call that found the buffer empty and waited this long for an item
+    public void waitedEmpty(long nanos) {
+        emptyWaits.increment();
+        blockedNanos.add(nanos);
+    }
+
+    public long puts() {
+        return puts.sum();
+    }
+
+    public long removes() {
+        return removes.sum();
+    }
+
+    public long fullWaits() {
+        return fullWaits.sum();
+    }
+
+    public long emptyWaits() {
+        return emptyWaits.sum();
+    }
+
+    public long blockedNanos() {
+        return blockedNanos.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("puts: %d | removes: %d | full waits: %d | empty waits: %d | blocked: %.1f ms",
+                puts(), removes(), fullWaits(), emptyWaits(), blockedNanos() / 1e6);
+    }
+}
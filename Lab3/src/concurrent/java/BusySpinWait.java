@@ -0,0 +1,23 @@
+import java.util.function.BooleanSupplier;
+
+// Checks in a tight loop. Lowest latency, one full core per waiting thread; only for
+// threads pinned to their own cores.
+class BusySpinWait implements WaitStrategy {
+    @Override
+    public void await(int side, BooleanSupplier ready) throws InterruptedException {
+        while (!ready.getAsBoolean()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public void signal(int side) {
+    }
+
+    @Override
+    public void signalAll(int side) {
+    }
+}
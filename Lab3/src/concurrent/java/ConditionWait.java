@@ -0,0 +1,68 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+// Parks waiting threads on a ReentrantLock with one Condition per side, so a put wakes
+// only a consumer and a remove only a producer, unlike notifyAll on a shared monitor.
+// Costs nothing while parked, but each hand-off to a parked thread goes through unpark
+// and the scheduler.
+//
+// The lock only orders waiting against signalling. A waiter counts itself and checks
+// ready under the lock; a signaller that sees no waiters skips the lock entirely, so an
+// uncontended buffer never touches it.
+class ConditionWait implements WaitStrategy {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition[] conditions = {lock.newCondition(), lock.newCondition()};
+    private final AtomicInteger[] waiters = {new AtomicInteger(), new AtomicInteger()};
+
+    @Override
+    public void await(int side, BooleanSupplier ready) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            // Counted before checking ready: a signaller that changes the state after our check
+            // is guaranteed to see the count and take the lock to signal us
+            waiters[side].incrementAndGet();
+            try {
+                while (!ready.getAsBoolean()) {
+                    conditions[side].await();
+                }
+            } finally {
+                waiters[side].decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signal(int side) {
+        if (hasWaiters(side)) {
+            lock.lock();
+            try {
+                conditions[side].signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void signalAll(int side) {
+        if (hasWaiters(side)) {
+            lock.lock();
+            try {
+                conditions[side].signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean hasWaiters(int side) {
+        // The buffer's state change may be a release store only; order it before reading the count
+        VarHandle.fullFence();
+        return waiters[side].get() > 0;
+    }
+}
@@ -2,20 +2,37 @@ class Consumer implements Runnable {
     private final Buffer buffer;
     private final int sleepTime;
     private final int id;
+    private final int batchSize;
 
     public Consumer(int id, Buffer buffer, int sleepTime) {
+        this(id, buffer, sleepTime, 1);
+    }
+
+    // batchSize > 1 takes up to that many items per drainTo
+    public Consumer(int id, Buffer buffer, int sleepTime, int batchSize) {
         this.id = id;
         this.buffer = buffer;
         this.sleepTime = sleepTime;
+        this.batchSize = batchSize;
     }
 
     @Override
     public void run() {
         try {
+            if (batchSize <= 1) {
+                while (true) {
+                    int item = buffer.remove();
+                    Trace.consumed(id, item);
+                    Thread.sleep(sleepTime);
+                }
+            }
+            int[] batch = new int[batchSize];
             while (true) {
-                int item = buffer.remove();
-                System.out.println("Consumer " + id + " consumed item " + item);
-                Thread.sleep(sleepTime);
+                int count = buffer.drainTo(batch, batchSize);
+                for (int j = 0; j < count; j++) {
+                    Trace.consumed(id, batch[j]);
+                    Thread.sleep(sleepTime);
+                }
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -0,0 +1,191 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load test for the buffers: producers and consumers run flat out, without sleeps or
+// console output, for a fixed time or a fixed number of items. Every item is the
+// producer's System.nanoTime() truncated to an int, so a consumer can tell how long the
+// item spent between put and remove (valid for latencies below ~2 s).
+//
+// Once the producers stop, the consumers keep going until the buffer is drained and are
+// then interrupted out of their wait. Each configuration runs once untimed to warm up the
+// JIT and once measured; the report has items/s and p50/p99/p99.9/max latencies in us.
+class LoadTest {
+    private final String bufferType;
+    private final int producers;
+    private final int consumers;
+    private final int batchSize;
+    private final int capacity;
+
+    private final AtomicLong produced = new AtomicLong();
+    private final List<LatencyHistogram> putLatencies = new ArrayList<>();
+    private final List<LatencyHistogram> removeLatencies = new ArrayList<>();
+    private final List<LatencyHistogram> endToEnd = new ArrayList<>();
+
+    private volatile boolean stopping;
+    private long elapsedNanos;
+
+    LoadTest(String bufferType, int producers, int consumers, int batchSize, int capacity) {
+        this.bufferType = bufferType;
+        this.producers = producers;
+        this.consumers = consumers;
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+    }
+
+    // Usage: --load <limit> <buffer_types> <mixes> [batch_size]
+    //   limit         run length: "5s", "500ms", or an item count such as "1000000"
+    //   buffer_types  comma-separated, as accepted by Buffer.create (monitor,ring:yield,striped)
+    //   mixes         comma-separated producers x consumers (1x1,4x4,8x2)
+    static void run(String[] args, int capacity) throws InterruptedException {
+        if (args.length < 3 || args.length > 4) {
+            System.out.println("Use: java Main --load <duration_s|duration_ms|items> <buffer_types> <mixes> [batch_size]");
+            System.out.println("  e.g. java Main --load 5s monitor,ring,striped 1x1,4x4,8x2 16");
+            return;
+        }
+        String limit = args[0];
+        long durationMillis = 0;
+        long items = 0;
+        if (limit.endsWith("ms")) {
+            durationMillis = Long.parseLong(limit.substring(0, limit.length() - 2));
+        } else if (limit.endsWith("s")) {
+            durationMillis = Long.parseLong(limit.substring(0, limit.length() - 1)) * 1000;
+        } else {
+            items = Long.parseLong(limit);
+        }
+        int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        for (String type : args[1].split(",")) {
+            for (String mix : args[2].split(",")) {
+                String[] counts = mix.split("x");
+                int producers = Integer.parseInt(counts[0]);
+                int consumers = Integer.parseInt(counts[1]);
+                new LoadTest(type, producers, consumers, batchSize, capacity)
+                        .measure(durationMillis / 5, items / 5);
+                new LoadTest(type, producers, consumers, batchSize, capacity)
+                        .measure(durationMillis, items)
+                        .report();
+            }
+        }
+    }
+
+    // Runs for durationMillis, or until itemLimit items are produced when durationMillis is 0
+    private LoadTest measure(long durationMillis, long itemLimit) throws InterruptedException {
+        Buffer buffer = Buffer.create(bufferType, capacity, producers);
+        long perProducer = durationMillis > 0 ? Long.MAX_VALUE : Math.max(1, itemLimit / producers);
+
+        Thread[] producerThreads = new Thread[producers];
+        for (int i = 0; i < producers; i++) {
+            LatencyHistogram latencies = register(putLatencies);
+            producerThreads[i] = new Thread(() -> produce(buffer, perProducer, latencies), "producer-" + i);
+        }
+        Thread[] consumerThreads = new Thread[consumers];
+        for (int i = 0; i < consumers; i++) {
+            LatencyHistogram removes = register(removeLatencies);
+            LatencyHistogram items = register(endToEnd);
+            consumerThreads[i] = new Thread(() -> consume(buffer, removes, items), "consumer-" + i);
+        }
+
+        long start = System.nanoTime();
+        for (Thread consumer : consumerThreads) {
+            consumer.start();
+        }
+        for (Thread producer : producerThreads) {
+            producer.start();
+        }
+        if (durationMillis > 0) {
+            Thread.sleep(durationMillis);
+            stopping = true;
+        }
+        for (Thread producer : producerThreads) {
+            producer.join();
+        }
+        // Drain: every item produced must be removed before the consumers are stopped
+        while (buffer.metrics().removes() < produced.get()) {
+            Thread.sleep(1);
+        }
+        elapsedNanos = System.nanoTime() - start;
+        for (Thread consumer : consumerThreads) {
+            consumer.interrupt();
+        }
+        for (Thread consumer : consumerThreads) {
+            consumer.join();
+        }
+        return this;
+    }
+
+    private void produce(Buffer buffer, long limit, LatencyHistogram latencies) {
+        int[] batch = new int[batchSize];
+        long count = 0;
+        try {
+            while (count < limit && !stopping) {
+                int n = (int) Math.min(batchSize, limit - count);
+                long before = System.nanoTime();
+                if (n == 1) {
+                    buffer.put((int) before);
+                } else {
+                    for (int i = 0; i < n; i++) {
+                        batch[i] = (int) before;
+                    }
+                    buffer.putAll(batch, 0, n);
+                }
+                latencies.record(System.nanoTime() - before);
+                count += n;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            produced.addAndGet(count);
+        }
+    }
+
+    private void consume(Buffer buffer, LatencyHistogram removes, LatencyHistogram items) {
+        int[] batch = new int[batchSize];
+        try {
+            while (true) {
+                long before = System.nanoTime();
+                int n;
+                if (batchSize == 1) {
+                    batch[0] = buffer.remove();
+                    n = 1;
+                } else {
+                    n = buffer.drainTo(batch, batchSize);
+                }
+                long now = System.nanoTime();
+                removes.record(now - before);
+                for (int i = 0; i < n; i++) {
+                    // Both sides truncate to int, so the difference is right as long as it fits
+                    items.record((int) now - batch[i]);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stopped after the drain
+        }
+    }
+
+    // Each thread gets its own histogram; they are merged once all threads have been joined
+    private static LatencyHistogram register(List<LatencyHistogram> histograms) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    private void report() {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%s %dx%d batch %d: %,.0f items/s (%d items in %.2f s)%n",
+                bufferType, producers, consumers, batchSize, produced.get() / seconds, produced.get(), seconds);
+        System.out.println("  " + percentiles("put", putLatencies));
+        System.out.println("  " + percentiles("remove", removeLatencies));
+        System.out.println("  " + percentiles("end-to-end", endToEnd));
+    }
+
+    private static String percentiles(String name, List<LatencyHistogram> histograms) {
+        LatencyHistogram all = new LatencyHistogram();
+        for (LatencyHistogram histogram : histograms) {
+            all.add(histogram);
+        }
+        return String.format("%-10s p50 %8.2f | p99 %8.2f | p99.9 %9.2f | max %10.2f us",
+                name, all.valueAtPercentile(50) / 1e3, all.valueAtPercentile(99) / 1e3,
+                all.valueAtPercentile(99.9) / 1e3, all.max() / 1e3);
+    }
+}
@@ -1,7 +1,25 @@
+import java.util.Arrays;
+
 public class Main {
-    public static void main(String[] args) {
-        if (args.length != 5) {
-            System.out.println("Use: java Main <num_producers> <max_items_per_producer> <producing_time> <num_consumers> <consuming_time>");
+    private static final int BUFFER_CAPACITY = 100;
+
+    public static void main(String[] args) throws InterruptedException {
+        // --load runs the load test instead (see LoadTest); nothing is printed per item
+        if (args.length > 0 && args[0].equals("--load")) {
+            LoadTest.run(Arrays.copyOfRange(args, 1, args.length), BUFFER_CAPACITY);
+            return;
+        }
+
+        // --quiet turns the event trace off; the counters are still printed at the end.
+        // <wait> is condition, spin-park, yield or busy-spin; striped has one lane per producer
+        boolean trace = true;
+        if (args.length > 0 && args[0].equals("--quiet")) {
+            trace = false;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (args.length < 5 || args.length > 8) {
+            System.out.println("Use: java Main --load <duration_s|duration_ms|items> <buffer_types> <mixes> [batch_size]");
+            System.out.println("Use: java Main [--quiet] <num_producers> <max_items_per_producer> <producing_time> <num_consumers> <consuming_time> [monitor|ring[:<wait>]|striped[:<wait>]] [producer_batch] [consumer_batch]");
             return;
         }
 
@@ -10,19 +28,25 @@ public class Main {
         int producingTime = Integer.parseInt(args[2]);
         int numConsumers = Integer.parseInt(args[3]);
         int consumingTime = Integer.parseInt(args[4]);
+        String bufferType = args.length > 5 ? args[5] : "monitor";
+        int producerBatch = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+        int consumerBatch = args.length > 7 ? Integer.parseInt(args[7]) : 1;
 
-        Buffer buffer = new Buffer();
+        Buffer buffer = Buffer.create(bufferType, BUFFER_CAPACITY, numProducers);
+        if (trace) {
+            Trace.start(System.out);
+        }
 
         Thread[] producers = new Thread[numProducers];
         Thread[] consumers = new Thread[numConsumers];
 
         for (int i = 0; i < numProducers; i++) {
-            producers[i] = new Thread((Runnable) new Producer(i + 1, buffer, maxItemsPerProducer, producingTime));
+            producers[i] = new Thread((Runnable) new Producer(i + 1, buffer, maxItemsPerProducer, producingTime, producerBatch));
             producers[i].start();
         }
 
         for (int i = 0; i < numConsumers; i++) {
-            consumers[i] = new Thread((Runnable) new Consumer(i + 1, buffer, consumingTime));
+            consumers[i] = new Thread((Runnable) new Consumer(i + 1, buffer, consumingTime, consumerBatch));
             consumers[i].start();
         }
 
@@ -34,6 +58,16 @@ public class Main {
             }
         }
 
+        try {
+            long dropped = Trace.stop();
+            if (dropped > 0) {
+                System.out.println("Trace dropped " + dropped + " events");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println(buffer.metrics());
+
         System.exit(0);
     }
 }
\ No newline at end of file
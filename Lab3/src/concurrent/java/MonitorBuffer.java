@@ -0,0 +1,92 @@
+import java.util.LinkedList;
+
+class MonitorBuffer implements Buffer {
+    private final LinkedList<Integer> data = new LinkedList<>();
+    private final int capacity;
+    private final BufferMetrics metrics = new BufferMetrics();
+
+    public MonitorBuffer(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public synchronized void put(int value) throws InterruptedException {
+        if (data.size() >= capacity) {
+            long start = System.nanoTime();
+            while (data.size() >= capacity) {
+                wait();
+            }
+            metrics.waitedFull(System.nanoTime() - start);
+        }
+        data.add(value);
+        metrics.put(1);
+        Trace.inserted(value, data.size());
+        notifyAll(); 
+    }
+
+    @Override
+    public synchronized int remove() throws InterruptedException {
+        if (data.isEmpty()) {
+            long start = System.nanoTime();
+            while (data.isEmpty()) {
+                wait();
+            }
+            metrics.waitedEmpty(System.nanoTime() - start);
+        }
+        int value = data.removeFirst();
+        metrics.removed(1);
+        Trace.removed(value, data.size());
+        notifyAll();  
+        return value;
+    }
+
+    @Override
+    public synchronized void putAll(int[] items, int off, int len) throws InterruptedException {
+        int end = off + len;
+        while (off < end) {
+            if (data.size() >= capacity) {
+                long start = System.nanoTime();
+                while (data.size() >= capacity) {
+                    wait();
+                }
+                metrics.waitedFull(System.nanoTime() - start);
+            }
+            int count = Math.min(end - off, capacity - data.size());
+            for (int i = 0; i < count; i++) {
+                data.add(items[off + i]);
+            }
+            off += count;
+            metrics.put(count);
+            Trace.insertedBatch(count, data.size());
+            // One wakeup per batch instead of one per item
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized int drainTo(int[] dst, int max) throws InterruptedException {
+        if (max <= 0) {
+            return 0;
+        }
+        if (data.isEmpty()) {
+            long start = System.nanoTime();
+            while (data.isEmpty()) {
+                wait();
+            }
+            metrics.waitedEmpty(System.nanoTime() - start);
+        }
+        int count = Math.min(max, data.size());
+        for (int i = 0; i < count; i++) {
+            dst[i] = data.removeFirst();
+        }
+        metrics.removed(count);
+        Trace.removedBatch(count, data.size());
+        notifyAll();
+        return count;
+    }
+
+    @Override
+    public BufferMetrics metrics() {
+        return metrics;
+    }
+}
@@ -3,22 +3,43 @@ class Producer implements Runnable {
     private final int maxItems;
     private final int sleepTime;
     private final int id;
+    private final int batchSize;
 
     public Producer(int id, Buffer buffer, int maxItems, int sleepTime) {
+        this(id, buffer, maxItems, sleepTime, 1);
+    }
+
+    // batchSize > 1 produces that many items before handing them to the buffer in one putAll
+    public Producer(int id, Buffer buffer, int maxItems, int sleepTime, int batchSize) {
         this.id = id;
         this.buffer = buffer;
         this.maxItems = maxItems;
         this.sleepTime = sleepTime;
+        this.batchSize = batchSize;
     }
 
     @Override
     public void run() {
         try {
-            for (int i = 0; i < maxItems; i++) {
-                Thread.sleep(sleepTime);
-                int item = (int) (Math.random() * 100);
-                System.out.println("Producer " + id + " produced item " + item);
-                buffer.put(item);
+            if (batchSize <= 1) {
+                for (int i = 0; i < maxItems; i++) {
+                    Thread.sleep(sleepTime);
+                    int item = (int) (Math.random() * 100);
+                    Trace.produced(id, item);
+                    buffer.put(item);
+                }
+                return;
+            }
+            int[] batch = new int[batchSize];
+            for (int i = 0; i < maxItems; ) {
+                int count = Math.min(batchSize, maxItems - i);
+                for (int j = 0; j < count; j++) {
+                    Thread.sleep(sleepTime);
+                    batch[j] = (int) (Math.random() * 100);
+                    Trace.produced(id, batch[j]);
+                }
+                buffer.putAll(batch, 0, count);
+                i += count;
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
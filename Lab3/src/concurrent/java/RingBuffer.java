@@ -0,0 +1,225 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
+
+// Bounded multi-producer/multi-consumer ring over int[], without locks (Dmitry Vyukov's
+// bounded MPMC queue). Items are stored unboxed and nothing is allocated per put/remove.
+//
+// Every slot carries a sequence number that says whose turn it is:
+//   sequence == pos                -> free for the producer that claims position pos
+//   sequence == pos + 1            -> holds the item for the consumer that claims pos
+//   sequence == pos + capacity     -> free again, for the producer one lap later
+// Producers and consumers claim positions with a CAS on their own counter, so a put
+// and a remove never touch the same counter, and nobody waits for a lock holder.
+// A full or empty ring waits through its WaitStrategy.
+class RingBuffer implements Buffer {
+    // Spins before yielding while a slot is released by a thread already past its CAS
+    private static final int SPINS = 100;
+
+    private final int capacity;
+    private final int[] values;
+    private final AtomicLongArray sequences;
+    private final AtomicLong putPosition = new AtomicLong();
+    private final AtomicLong removePosition = new AtomicLong();
+    private final BufferMetrics metrics = new BufferMetrics();
+    private final WaitStrategy waitStrategy;
+
+    // Kept as fields so waiting does not allocate a lambda per call
+    private final BooleanSupplier hasSpace = () -> size() < capacity();
+    private final BooleanSupplier hasItems = () -> size() > 0;
+
+    public RingBuffer(int capacity) {
+        this(capacity, new SpinThenParkWait());
+    }
+
+    public RingBuffer(int capacity, WaitStrategy waitStrategy) {
+        // With a single slot "holds the item for pos" and "free for pos + 1" would be the same sequence
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2");
+        }
+        this.capacity = capacity;
+        this.values = new int[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public void put(int value) throws InterruptedException {
+        long waitStart = 0;
+        while (!offer(value)) {
+            if (waitStart == 0) {
+                waitStart = System.nanoTime();
+            }
+            waitStrategy.await(WaitStrategy.NOT_FULL, hasSpace);
+        }
+        if (waitStart != 0) {
+            metrics.waitedFull(System.nanoTime() - waitStart);
+        }
+        metrics.put(1);
+        Trace.inserted(value, size());
+        waitStrategy.signal(WaitStrategy.NOT_EMPTY);
+    }
+
+    @Override
+    public int remove() throws InterruptedException {
+        long waitStart = 0;
+        long value;
+        while ((value = poll()) < 0) {
+            if (waitStart == 0) {
+                waitStart = System.nanoTime();
+            }
+            waitStrategy.await(WaitStrategy.NOT_EMPTY, hasItems);
+        }
+        if (waitStart != 0) {
+            metrics.waitedEmpty(System.nanoTime() - waitStart);
+        }
+        metrics.removed(1);
+        Trace.removed((int) value, size());
+        waitStrategy.signal(WaitStrategy.NOT_FULL);
+        return (int) value;
+    }
+
+    // Inserts without waiting, tracing or counting; returns false if the ring is full
+    boolean offer(int value) {
+        while (true) {
+            long pos = putPosition.get();
+            int slot = (int) (pos % capacity);
+            long sequence = sequences.getAcquire(slot);
+            if (sequence == pos) {
+                if (putPosition.compareAndSet(pos, pos + 1)) {
+                    values[slot] = value;
+                    // Release: the value is visible to whoever sees the new sequence
+                    sequences.setRelease(slot, pos + 1);
+                    return true;
+                }
+            } else if (sequence < pos) {
+                // The slot still holds the item from the previous lap: full
+                return false;
+            }
+            // sequence > pos: another producer took pos first, retry with a fresh position
+        }
+    }
+
+    // Removes without waiting, tracing or counting; returns the item as a
+    // non-negative long, or -1 if the ring is empty
+    long poll() {
+        while (true) {
+            long pos = removePosition.get();
+            int slot = (int) (pos % capacity);
+            long sequence = sequences.getAcquire(slot);
+            if (sequence == pos + 1) {
+                if (removePosition.compareAndSet(pos, pos + 1)) {
+                    int value = values[slot];
+                    sequences.setRelease(slot, pos + capacity);
+                    return value & 0xFFFFFFFFL;
+                }
+            } else if (sequence < pos + 1) {
+                // Nothing written at pos yet: empty
+                return -1;
+            }
+        }
+    }
+
+    // Claims as many consecutive positions as are free with one CAS, then fills them.
+    // A claimed slot may still be being read by the consumer one lap behind, which is
+    // already past its own CAS and about to release it, so waiting for it is short.
+    @Override
+    public void putAll(int[] items, int off, int len) throws InterruptedException {
+        int end = off + len;
+        long waitStart = 0;
+        while (off < end) {
+            long pos = putPosition.get();
+            // Positions below removePosition + capacity have been claimed by a consumer on the previous lap
+            int free = (int) Math.min(end - off, removePosition.get() + capacity - pos);
+            if (free <= 0) {
+                if (waitStart == 0) {
+                    waitStart = System.nanoTime();
+                }
+                waitStrategy.await(WaitStrategy.NOT_FULL, hasSpace);
+                continue;
+            }
+            if (!putPosition.compareAndSet(pos, pos + free)) {
+                continue;
+            }
+            for (int i = 0; i < free; i++) {
+                int slot = (int) ((pos + i) % capacity);
+                awaitSequence(slot, pos + i);
+                values[slot] = items[off + i];
+                sequences.setRelease(slot, pos + i + 1);
+            }
+            off += free;
+            if (waitStart != 0) {
+                metrics.waitedFull(System.nanoTime() - waitStart);
+                waitStart = 0;
+            }
+            metrics.put(free);
+            Trace.insertedBatch(free, size());
+            waitStrategy.signalAll(WaitStrategy.NOT_EMPTY);
+        }
+    }
+
+    @Override
+    public int drainTo(int[] dst, int max) throws InterruptedException {
+        if (max <= 0) {
+            return 0;
+        }
+        long waitStart = 0;
+        while (true) {
+            long pos = removePosition.get();
+            // Positions below putPosition have been claimed by a producer, though maybe not written yet
+            int available = (int) Math.min(max, putPosition.get() - pos);
+            if (available <= 0) {
+                if (waitStart == 0) {
+                    waitStart = System.nanoTime();
+                }
+                waitStrategy.await(WaitStrategy.NOT_EMPTY, hasItems);
+                continue;
+            }
+            if (!removePosition.compareAndSet(pos, pos + available)) {
+                continue;
+            }
+            for (int i = 0; i < available; i++) {
+                int slot = (int) ((pos + i) % capacity);
+                awaitSequence(slot, pos + i + 1);
+                dst[i] = values[slot];
+                sequences.setRelease(slot, pos + i + capacity);
+            }
+            if (waitStart != 0) {
+                metrics.waitedEmpty(System.nanoTime() - waitStart);
+            }
+            metrics.removed(available);
+            Trace.removedBatch(available, size());
+            waitStrategy.signalAll(WaitStrategy.NOT_FULL);
+            return available;
+        }
+    }
+
+    @Override
+    public BufferMetrics metrics() {
+        return metrics;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // Approximate when other threads are active
+    public int size() {
+        long size = putPosition.get() - removePosition.get();
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    // Waits for a thread that is already past its CAS to release a slot; it only needs to be scheduled
+    private void awaitSequence(int slot, long sequence) {
+        for (int spins = 0; sequences.getAcquire(slot) != sequence; spins++) {
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+import java.util.function.BooleanSupplier;
+
+// Spins for a short while in case the other side is about to act, then parks like
+// ConditionWait. Short waits are answered without a context switch; long waits cost
+// only the initial spin.
+class SpinThenParkWait extends ConditionWait {
+    private static final int SPINS = 1_000;
+
+    @Override
+    public void await(int side, BooleanSupplier ready) throws InterruptedException {
+        for (int i = 0; i < SPINS; i++) {
+            if (ready.getAsBoolean()) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        super.await(side, ready);
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+// Buffer split into lanes, one per producer (or group of producers), so producers do not
+// contend with each other. Each lane is a lock-free RingBuffer.
+//
+// Threads get lanes round-robin the first time they use the buffer: with as many lanes as
+// producers, every producer has a lane to itself. A consumer also has a home lane; it takes
+// from it first and, when it is empty, steals from the other lanes in turn.
+//
+// The total capacity is still enforced: a producer reserves room in one shared counter
+// before writing to its lane, and a consumer gives the room back after taking an item.
+// That counter is the only state every thread writes, one CAS per item.
+class StripedBuffer implements Buffer {
+    private final int capacity;
+    private final RingBuffer[] lanes;
+    private final AtomicInteger size = new AtomicInteger();
+    private final BufferMetrics metrics = new BufferMetrics();
+    private final WaitStrategy waitStrategy;
+
+    private final AtomicInteger nextProducerLane = new AtomicInteger();
+    private final AtomicInteger nextConsumerLane = new AtomicInteger();
+    private final ThreadLocal<Integer> producerLane;
+    private final ThreadLocal<Integer> consumerLane;
+
+    private final BooleanSupplier hasSpace = () -> size.get() < capacity();
+    private final BooleanSupplier hasItems = this::anyLaneHasItems;
+
+    public StripedBuffer(int capacity, int lanes, WaitStrategy waitStrategy) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("lanes must be positive");
+        }
+        this.capacity = capacity;
+        this.waitStrategy = waitStrategy;
+        // Each lane can hold the whole capacity, so a lane is never full once room is reserved
+        this.lanes = new RingBuffer[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new RingBuffer(Math.max(2, capacity), waitStrategy);
+        }
+        this.producerLane = ThreadLocal.withInitial(() -> nextProducerLane.getAndIncrement() % lanes);
+        this.consumerLane = ThreadLocal.withInitial(() -> nextConsumerLane.getAndIncrement() % lanes);
+    }
+
+    @Override
+    public void put(int value) throws InterruptedException {
+        reserve(1);
+        RingBuffer lane = lanes[producerLane.get()];
+        while (!lane.offer(value)) {
+            Thread.onSpinWait();
+        }
+        metrics.put(1);
+        Trace.inserted(value, size());
+        waitStrategy.signal(WaitStrategy.NOT_EMPTY);
+    }
+
+    @Override
+    public int remove() throws InterruptedException {
+        long waitStart = 0;
+        long value;
+        while ((value = pollAny()) < 0) {
+            if (waitStart == 0) {
+                waitStart = System.nanoTime();
+            }
+            waitStrategy.await(WaitStrategy.NOT_EMPTY, hasItems);
+        }
+        if (waitStart != 0) {
+            metrics.waitedEmpty(System.nanoTime() - waitStart);
+        }
+        size.decrementAndGet();
+        metrics.removed(1);
+        Trace.removed((int) value, size());
+        waitStrategy.signal(WaitStrategy.NOT_FULL);
+        return (int) value;
+    }
+
+    @Override
+    public void putAll(int[] items, int off, int len) throws InterruptedException {
+        RingBuffer lane = lanes[producerLane.get()];
+        int end = off + len;
+        while (off < end) {
+            int count = reserve(end - off);
+            for (int i = 0; i < count; i++) {
+                while (!lane.offer(items[off + i])) {
+                    Thread.onSpinWait();
+                }
+            }
+            off += count;
+            metrics.put(count);
+            Trace.insertedBatch(count, size());
+            waitStrategy.signalAll(WaitStrategy.NOT_EMPTY);
+        }
+    }
+
+    @Override
+    public int drainTo(int[] dst, int max) throws InterruptedException {
+        if (max <= 0) {
+            return 0;
+        }
+        long waitStart = 0;
+        int count = 0;
+        while (count == 0) {
+            int home = consumerLane.get();
+            for (int i = 0; i < lanes.length && count < max; i++) {
+                RingBuffer lane = lanes[(home + i) % lanes.length];
+                long value;
+                while (count < max && (value = lane.poll()) >= 0) {
+                    dst[count++] = (int) value;
+                }
+            }
+            if (count == 0) {
+                if (waitStart == 0) {
+                    waitStart = System.nanoTime();
+                }
+                waitStrategy.await(WaitStrategy.NOT_EMPTY, hasItems);
+            }
+        }
+        if (waitStart != 0) {
+            metrics.waitedEmpty(System.nanoTime() - waitStart);
+        }
+        size.addAndGet(-count);
+        metrics.removed(count);
+        Trace.removedBatch(count, size());
+        waitStrategy.signalAll(WaitStrategy.NOT_FULL);
+        return count;
+    }
+
+    @Override
+    public BufferMetrics metrics() {
+        return metrics;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // Items reserved by producers and not yet taken; approximate when other threads are active
+    public int size() {
+        return Math.max(0, Math.min(capacity, size.get()));
+    }
+
+    // Reserves room for between 1 and wanted items, waiting while the buffer is full
+    private int reserve(int wanted) throws InterruptedException {
+        long waitStart = 0;
+        while (true) {
+            int current = size.get();
+            int free = Math.min(wanted, capacity - current);
+            if (free > 0) {
+                if (size.compareAndSet(current, current + free)) {
+                    if (waitStart != 0) {
+                        metrics.waitedFull(System.nanoTime() - waitStart);
+                    }
+                    return free;
+                }
+                continue;
+            }
+            if (waitStart == 0) {
+                waitStart = System.nanoTime();
+            }
+            waitStrategy.await(WaitStrategy.NOT_FULL, hasSpace);
+        }
+    }
+
+    // Home lane first, then the others in turn
+    private long pollAny() {
+        int home = consumerLane.get();
+        for (int i = 0; i < lanes.length; i++) {
+            long value = lanes[(home + i) % lanes.length].poll();
+            if (value >= 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    private boolean anyLaneHasItems() {
+        for (RingBuffer lane : lanes) {
+            if (lane.size() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
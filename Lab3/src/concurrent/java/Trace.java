@@ -0,0 +1,205 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Event log for the buffer, producers and consumers that keeps console I/O off their threads.
+//
+// Each thread records its events into its own ring of longs; nothing is locked and no
+// string is built on the recording thread. A background writer drains the rings, formats
+// the lines and writes them out. A thread whose ring is full drops the event instead of
+// waiting, and the number of dropped events is reported by stop(). When tracing was
+// never started, recording returns at once and events are simply dropped.
+//
+// Lines from one thread keep their order; lines from different threads are interleaved
+// in the order the writer drains them, not in the exact order they happened.
+//
+// A ring takes RING_SIZE longs (8 KB), so a thousand producers and consumers cost a few MB.
+// The writer drains the ring of a thread that has ended one last time and lets it go.
+final class Trace {
+    private static final int RING_SIZE = 1 << 10;
+    private static final long WRITER_PAUSE_NANOS = 5_000_000;
+
+    private static final int INSERTED = 0;
+    private static final int REMOVED = 1;
+    private static final int INSERTED_BATCH = 2;
+    private static final int REMOVED_BATCH = 3;
+    private static final int PRODUCED = 4;
+    private static final int CONSUMED = 5;
+
+    private static volatile boolean enabled;
+    private static volatile boolean stopping;
+    private static Thread writer;
+    private static final List<Ring> rings = new CopyOnWriteArrayList<>();
+    // Events dropped by rings that were already let go
+    private static final AtomicLong retiredDropped = new AtomicLong();
+    private static final ThreadLocal<Ring> ring = ThreadLocal.withInitial(Trace::register);
+
+    private Trace() {
+    }
+
+    // Starts the background writer; events recorded before this are dropped
+    static synchronized void start(PrintStream out) {
+        if (enabled) {
+            return;
+        }
+        Writer lines = new BufferedWriter(new OutputStreamWriter(out), 1 << 16);
+        stopping = false;
+        writer = new Thread(() -> writeLoop(lines), "trace-writer");
+        writer.setDaemon(true);
+        enabled = true;
+        writer.start();
+    }
+
+    // Stops recording, writes out everything already recorded and returns how many events were dropped
+    static synchronized long stop() throws InterruptedException {
+        if (!enabled) {
+            return 0;
+        }
+        enabled = false;
+        stopping = true;
+        LockSupport.unpark(writer);
+        writer.join();
+        long dropped = retiredDropped.get();
+        for (Ring r : rings) {
+            dropped += r.dropped.get();
+        }
+        return dropped;
+    }
+
+    static boolean enabled() {
+        return enabled;
+    }
+
+    // "Inserted: value | Buffer size: size"
+    static void inserted(int value, int size) {
+        record(INSERTED, size, value);
+    }
+
+    // "Removed: value | Buffer size: size"
+    static void removed(int value, int size) {
+        record(REMOVED, size, value);
+    }
+
+    // "Inserted count items | Buffer size: size"
+    static void insertedBatch(int count, int size) {
+        record(INSERTED_BATCH, size, count);
+    }
+
+    // "Removed count items | Buffer size: size"
+    static void removedBatch(int count, int size) {
+        record(REMOVED_BATCH, size, count);
+    }
+
+    // "Producer id produced item item"
+    static void produced(int id, int item) {
+        record(PRODUCED, id, item);
+    }
+
+    // "Consumer id consumed item item"
+    static void consumed(int id, int item) {
+        record(CONSUMED, id, item);
+    }
+
+    // Packs an event into one long: kind in the top 3 bits, a (a size or an id) in the next 29, b in the low 32
+    private static void record(int kind, int a, int b) {
+        if (!enabled) {
+            return;
+        }
+        ring.get().offer(((long) kind << 61) | ((long) (a & 0x1FFFFFFF) << 32) | (b & 0xFFFFFFFFL));
+    }
+
+    private static Ring register() {
+        Ring r = new Ring(Thread.currentThread());
+        rings.add(r);
+        return r;
+    }
+
+    private static void writeLoop(Writer out) {
+        try {
+            while (true) {
+                boolean last = stopping;
+                int written = 0;
+                for (Ring r : rings) {
+                    // Checked before draining: once the owner has ended, this drain is its last
+                    boolean ended = !r.owner.isAlive();
+                    written += r.drainTo(out);
+                    if (ended) {
+                        retiredDropped.addAndGet(r.dropped.get());
+                        rings.remove(r);
+                    }
+                }
+                out.flush();
+                // Once stopping is seen, one more full pass picks up whatever was recorded before it
+                if (last) {
+                    return;
+                }
+                if (written == 0) {
+                    LockSupport.parkNanos(WRITER_PAUSE_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Trace writer stopped: " + e.getMessage());
+        }
+    }
+
+    private static String format(long event) {
+        int kind = (int) (event >>> 61);
+        int a = (int) ((event >>> 32) & 0x1FFFFFFF);
+        int b = (int) event;
+        switch (kind) {
+            case INSERTED:
+                return "Inserted: " + b + " | Buffer size: " + a;
+            case REMOVED:
+                return "Removed: " + b + " | Buffer size: " + a;
+            case INSERTED_BATCH:
+                return "Inserted " + b + " items | Buffer size: " + a;
+            case REMOVED_BATCH:
+                return "Removed " + b + " items | Buffer size: " + a;
+            case PRODUCED:
+                return "Producer " + a + " produced item " + b;
+            default:
+                return "Consumer " + a + " consumed item " + b;
+        }
+    }
+
+    // Single-producer/single-consumer ring: its own thread records, the writer drains.
+    // Each side owns one counter and publishes it with an ordered store.
+    private static final class Ring {
+        final Thread owner;
+        final long[] events = new long[RING_SIZE];
+        final AtomicLong head = new AtomicLong();   // next event to write out, owned by the writer
+        final AtomicLong tail = new AtomicLong();   // next free slot, owned by the recording thread
+        final AtomicLong dropped = new AtomicLong();
+
+        Ring(Thread owner) {
+            this.owner = owner;
+        }
+
+        void offer(long event) {
+            long t = tail.get();
+            if (t - head.get() == RING_SIZE) {
+                dropped.lazySet(dropped.get() + 1);
+                return;
+            }
+            events[(int) (t & (RING_SIZE - 1))] = event;
+            tail.lazySet(t + 1);
+        }
+
+        int drainTo(Writer out) throws IOException {
+            long h = head.get();
+            long t = tail.get();
+            for (long i = h; i < t; i++) {
+                out.write(format(events[(int) (i & (RING_SIZE - 1))]));
+                out.write('\n');
+            }
+            head.lazySet(t);
+            return (int) (t - h);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+import java.util.function.BooleanSupplier;
+
+// How a thread waits for a buffer to become not full (producers) or not empty (consumers).
+// The buffer changes its state without the strategy's help, then calls signal/signalAll
+// for the side that may now proceed; await returns once ready says the side can try again.
+//
+//   strategy    wake-up latency                 CPU while waiting
+//   condition   park/unpark, ~10-50 us          none
+//   spin-park   < 1 us if the wait is short,    one core for a few us, then none
+//               else like condition
+//   yield       ~1-10 us, scheduler dependent   one core, shared with runnable threads
+//   busy-spin   ~0.1 us                         one full core per waiting thread
+//
+// Spinning only pays off with a core per thread; busy-spin is meant for threads pinned to
+// dedicated cores, and on an oversubscribed machine it starves the thread being waited for.
+interface WaitStrategy {
+    int NOT_FULL = 0;
+    int NOT_EMPTY = 1;
+
+    // Returns once ready is true; ready may be checked any number of times
+    void await(int side, BooleanSupplier ready) throws InterruptedException;
+
+    // Called after a change that lets one waiter on side proceed
+    void signal(int side);
+
+    // Called after a change that may let several waiters on side proceed
+    void signalAll(int side);
+
+    static WaitStrategy create(String name) {
+        switch (name) {
+            case "condition":
+                return new ConditionWait();
+            case "spin-park":
+                return new SpinThenParkWait();
+            case "yield":
+                return new YieldWait();
+            case "busy-spin":
+                return new BusySpinWait();
+            default:
+                throw new IllegalArgumentException("Unknown wait strategy: " + name
+                        + " (use condition, spin-park, yield or busy-spin)");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+import java.util.function.BooleanSupplier;
+
+// Gives up the processor between checks. Reacts within a scheduler slice without parking,
+// and lets other runnable threads use the core, but keeps it busy when nothing else runs.
+class YieldWait implements WaitStrategy {
+    @Override
+    public void await(int side, BooleanSupplier ready) throws InterruptedException {
+        while (!ready.getAsBoolean()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public void signal(int side) {
+    }
+
+    @Override
+    public void signalAll(int side) {
+    }
+}
@@ -2,8 +2,21 @@
 
 BASE_DIR=$(dirname -- "$(readlink -f -- "$0")")
 
-if [ "$#" -ne 5 ]; then
-    echo "Uso: $0 <num_producers> <max_items_per_producer> <producing_time> <num_consumers> <consuming_time>"
+if [ "$1" = "--load" ]; then
+    # Teste de carga: java Main --load <duration_s|duration_ms|items> <buffer_types> <mixes> [batch_size]
+    java -cp "$BASE_DIR/java/bin" Main "$@"
+    exit $?
+fi
+
+QUIET=()
+if [ "$1" = "--quiet" ]; then
+    QUIET=(--quiet)
+    shift
+fi
+
+if [ "$#" -lt 5 ] || [ "$#" -gt 8 ]; then
+    echo "Uso: $0 --load <duration_s|duration_ms|items> <buffer_types> <mixes> [batch_size]"
+    echo "Uso: $0 [--quiet] <num_producers> <max_items_per_producer> <producing_time> <num_consumers> <consuming_time> [monitor|ring[:<wait>]|striped[:<wait>]] [producer_batch] [consumer_batch]"
     exit 1
 fi
 
@@ -12,5 +25,8 @@ MAX_ITEMS_PRODUCERS=$2
 PRODUCING_TIME=$3
 CONSUMERS=$4
 CONSUMING_TIME=$5
+BUFFER_TYPE=${6:-monitor}
+PRODUCER_BATCH=${7:-1}
+CONSUMER_BATCH=${8:-1}
 
-java -cp "$BASE_DIR/java/bin" Main "$PRODUCERS" "$MAX_ITEMS_PRODUCERS" "$PRODUCING_TIME" "$CONSUMERS" "$CONSUMING_TIME"
+java -cp "$BASE_DIR/java/bin" Main "${QUIET[@]}" "$PRODUCERS" "$MAX_ITEMS_PRODUCERS" "$PRODUCING_TIME" "$CONSUMERS" "$CONSUMING_TIME" "$BUFFER_TYPE" "$PRODUCER_BATCH" "$CONSUMER_BATCH"
@@ -0,0 +1,265 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Byte sums, sample hashes and SHA-256 digests of files, remembered between runs.
+//
+// An entry is valid while the file keeps the size, modification time and file key
+// (device and inode on Unix) it had when the entry was made; those come from one stat
+// call, so an unchanged file is answered without opening it. Any executor thread may ask
+// for and add entries at the same time.
+//
+// The cache file is binary, about 60 bytes per file plus its path. save() merges with
+// whatever another run wrote in the meantime, under a lock on a side file, and replaces
+// the cache file atomically, so a crash or a concurrent run never leaves it half written.
+class ChecksumCache {
+    private static final int MAGIC = 0x53554D43; // "SUMC"
+    private static final int VERSION = 1;
+
+    private static final int HAS_SUM = 1;
+    private static final int HAS_SAMPLE = 2;
+    private static final int HAS_DIGEST = 4;
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Entries computed by this run, which win over the ones on disk when saving
+    private final Map<String, Entry> updated = new ConcurrentHashMap<>();
+
+    // Cache kept in memory only; save() does nothing
+    ChecksumCache() {
+        this.file = null;
+    }
+
+    // Cache backed by a file, loaded now if it exists
+    ChecksumCache(Path file) throws IOException {
+        this.file = file;
+        entries.putAll(read(file));
+    }
+
+    long sum(Path path) throws IOException {
+        BasicFileAttributes attributes = attributes(path);
+        Entry entry = valid(path, attributes);
+        if (entry != null && (entry.flags & HAS_SUM) != 0) {
+            return entry.sum;
+        }
+        // The digest costs no extra read here, and spares the duplicate search a second one
+        MessageDigest sha256 = Duplicates.sha256();
+        long sum = Sum.sum(path.toString(), sha256);
+        store(path, attributes, new Entry(attributes, HAS_SUM | HAS_DIGEST, sum, 0, sha256.digest()));
+        return sum;
+    }
+
+    long sampleHash(Path path) throws IOException {
+        BasicFileAttributes attributes = attributes(path);
+        Entry entry = valid(path, attributes);
+        if (entry != null && (entry.flags & HAS_SAMPLE) != 0) {
+            return entry.sampleHash;
+        }
+        long sampleHash = Duplicates.sampleHash(path);
+        store(path, attributes, new Entry(attributes, HAS_SAMPLE, 0, sampleHash, null));
+        return sampleHash;
+    }
+
+    String digest(Path path) throws IOException {
+        BasicFileAttributes attributes = attributes(path);
+        Entry entry = valid(path, attributes);
+        if (entry != null && (entry.flags & HAS_DIGEST) != 0) {
+            return Duplicates.hex(entry.digest);
+        }
+        String digest = Duplicates.digest(path);
+        store(path, attributes, new Entry(attributes, HAS_DIGEST, 0, 0, fromHex(digest)));
+        return digest;
+    }
+
+    // Writes the entries computed by this run into the cache file. Entries for files that
+    // no longer exist are dropped.
+    void save() throws IOException {
+        if (file == null || updated.isEmpty()) {
+            return;
+        }
+        Path lockFile = Paths.get(file + ".lock");
+        // Closing the channel releases the lock
+        try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            lockChannel.lock();
+            Map<String, Entry> merged = read(file);
+            merged.putAll(updated);
+            merged.keySet().removeIf(path -> !Files.exists(Paths.get(path)));
+
+            // Created like any new file, so the umask applies; only this run holds the lock,
+            // so the fixed name is safe. An existing cache keeps its permissions.
+            Path temporary = Paths.get(file + ".tmp");
+            Files.deleteIfExists(temporary);
+            try {
+                write(temporary, merged);
+                if (Files.exists(file)) {
+                    copyPermissions(file, temporary);
+                }
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system; the new file gets the default permissions
+        }
+    }
+
+    private static BasicFileAttributes attributes(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class);
+    }
+
+    // The cached entry for the file, if it was made for the file as it is now
+    private Entry valid(Path path, BasicFileAttributes attributes) {
+        Entry entry = entries.get(key(path));
+        return entry != null && entry.matches(attributes) ? entry : null;
+    }
+
+    // Adds what was just computed to the entry, or replaces the entry if the file changed.
+    // updated is written inside compute(), which holds the key's bin, so two threads adding
+    // different values for one file cannot leave the older entry there.
+    private void store(Path path, BasicFileAttributes attributes, Entry computed) {
+        entries.compute(key(path), (key, current) -> {
+            Entry entry = current != null && current.matches(attributes) ? current.with(computed) : computed;
+            updated.put(key, entry);
+            return entry;
+        });
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private static Map<String, Entry> read(Path file) throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.err.println("Ignoring unknown cache file " + file);
+                return entries;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                entries.put(path, Entry.read(in));
+            }
+        } catch (NoSuchFileException e) {
+            // First run
+        } catch (EOFException e) {
+            System.err.println("Ignoring truncated cache file " + file);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private static void write(Path file, Map<String, Entry> entries) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+        }
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    // What is known about one version of a file; immutable, so readers need no locking
+    private static final class Entry {
+        final long size;
+        final long modified;
+        final String fileKey;
+        final int flags;
+        final long sum;
+        final long sampleHash;
+        final byte[] digest;
+
+        Entry(BasicFileAttributes attributes, int flags, long sum, long sampleHash, byte[] digest) {
+            this(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                 String.valueOf(attributes.fileKey()), flags, sum, sampleHash, digest);
+        }
+
+        private Entry(long size, long modified, String fileKey, int flags, long sum, long sampleHash, byte[] digest) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+            this.flags = flags;
+            this.sum = sum;
+            this.sampleHash = sampleHash;
+            this.digest = digest;
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size()
+                && modified == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                && fileKey.equals(String.valueOf(attributes.fileKey()));
+        }
+
+        // This entry plus the values the other one has
+        Entry with(Entry other) {
+            return new Entry(size, modified, fileKey, flags | other.flags,
+                             (other.flags & HAS_SUM) != 0 ? other.sum : sum,
+                             (other.flags & HAS_SAMPLE) != 0 ? other.sampleHash : sampleHash,
+                             (other.flags & HAS_DIGEST) != 0 ? other.digest : digest);
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            long size = in.readLong();
+            long modified = in.readLong();
+            String fileKey = in.readUTF();
+            int flags = in.readByte();
+            long sum = (flags & HAS_SUM) != 0 ? in.readLong() : 0;
+            long sampleHash = (flags & HAS_SAMPLE) != 0 ? in.readLong() : 0;
+            byte[] digest = null;
+            if ((flags & HAS_DIGEST) != 0) {
+                digest = new byte[in.readUnsignedByte()];
+                in.readFully(digest);
+            }
+            return new Entry(size, modified, fileKey, flags, sum, sampleHash, digest);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeUTF(fileKey);
+            out.writeByte(flags);
+            if ((flags & HAS_SUM) != 0) {
+                out.writeLong(sum);
+            }
+            if ((flags & HAS_SAMPLE) != 0) {
+                out.writeLong(sampleHash);
+            }
+            if ((flags & HAS_DIGEST) != 0) {
+                out.writeByte(digest.length);
+                out.write(digest);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+// Finds files with identical contents in three stages, each one run only on the files
+// the previous stage could not tell apart:
+//   1. size, from the file metadata; a file with a size of its own is never opened
+//   2. CRC32C of the first and last SAMPLE_SIZE bytes, two small reads per file
+//   3. SHA-256 of the whole file
+// Files in the same final group have the same SHA-256, so they are duplicates.
+class Duplicates {
+    static final int SAMPLE_SIZE = 4096;
+
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final ThreadLocal<ByteBuffer> readBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+    private static final ThreadLocal<ByteBuffer> sampleBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(2 * SAMPLE_SIZE));
+
+    // Groups of two or more identical files, keyed by the hex SHA-256 of their contents.
+    // Sample hashes and digests come from the cache when the file has not changed.
+    static Map<String, List<Path>> find(Collection<Path> files, ExecutorService executor, ChecksumCache cache)
+            throws InterruptedException {
+        List<List<Path>> groups = new ArrayList<>();
+        groups.add(new ArrayList<>(files));
+        groups = new ArrayList<>(split(groups, executor, Files::size).values());
+        groups = new ArrayList<>(split(groups, executor, cache::sampleHash).values());
+
+        Map<String, List<Path>> duplicates = new HashMap<>();
+        for (Map.Entry<GroupKey<String>, List<Path>> entry : split(groups, executor, cache::digest).entrySet()) {
+            duplicates.put(entry.getKey().key, entry.getValue());
+        }
+        return duplicates;
+    }
+
+    // CRC32C of the head and tail of a file, or of all of it when it is small
+    static long sampleHash(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer = sampleBuffer.get();
+            buffer.clear();
+            if (size <= 2 * SAMPLE_SIZE) {
+                readFully(channel, buffer, 0, (int) size);
+            } else {
+                readFully(channel, buffer, 0, SAMPLE_SIZE);
+                readFully(channel, buffer, size - SAMPLE_SIZE, SAMPLE_SIZE);
+            }
+            buffer.flip();
+            Progress.read(buffer.remaining());
+            CRC32C crc = new CRC32C();
+            crc.update(buffer);
+            return crc.getValue();
+        }
+    }
+
+    // Hex SHA-256 of the whole file
+    static String digest(Path file) throws IOException {
+        MessageDigest sha256 = sha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = readBuffer.get();
+            while (true) {
+                buffer.clear();
+                if (channel.read(buffer) == -1) {
+                    break;
+                }
+                buffer.flip();
+                Progress.read(buffer.remaining());
+                sha256.update(buffer);
+            }
+        }
+        return hex(sha256.digest());
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required on every Java platform", e);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    // Splits every group by key, computing the keys on the executor, and keeps the
+    // resulting groups that still have more than one file. Keys only have to tell files
+    // of the same group apart; equal keys from different groups stay separate entries.
+    private static <K> Map<GroupKey<K>, List<Path>> split(List<List<Path>> groups, ExecutorService executor,
+                                                          FileKey<K> key) throws InterruptedException {
+        List<Path> files = new ArrayList<>();
+        List<Future<K>> keys = new ArrayList<>();
+        for (List<Path> group : groups) {
+            for (Path file : group) {
+                files.add(file);
+                keys.add(executor.submit(() -> key.of(file)));
+            }
+        }
+
+        Map<GroupKey<K>, List<Path>> result = new HashMap<>();
+        int next = 0;
+        for (int g = 0; g < groups.size(); g++) {
+            for (int i = 0; i < groups.get(g).size(); i++, next++) {
+                K fileKey = get(keys.get(next));
+                if (fileKey != null) {
+                    result.computeIfAbsent(new GroupKey<>(g, fileKey), k -> new ArrayList<>()).add(files.get(next));
+                }
+            }
+        }
+        result.values().removeIf(candidates -> candidates.size() < 2);
+        return result;
+    }
+
+    // The key computed for one file, or null if the file could not be read; the error is
+    // reported and the file left out, so the other groups are still found
+    private static <K> K get(Future<K> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            System.err.println(Sum.errorMessage(e));
+            return null;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length)
+            throws IOException {
+        int end = buffer.position() + length;
+        buffer.limit(end);
+        while (buffer.position() < end) {
+            int read = channel.read(buffer, position);
+            if (read == -1) {
+                break;
+            }
+            position += read;
+        }
+        buffer.limit(buffer.capacity());
+    }
+
+    interface FileKey<K> {
+        K of(Path file) throws IOException;
+    }
+
+    // Key within one of the groups being split
+    static final class GroupKey<K> {
+        final int group;
+        final K key;
+
+        GroupKey(int group, K key) {
+            this.group = group;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof GroupKey
+                && group == ((GroupKey<?>) other).group && key.equals(((GroupKey<?>) other).key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * group + key.hashCode();
+        }
+    }
+}
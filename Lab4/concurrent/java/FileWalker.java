@@ -0,0 +1,75 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+// Walks directory trees in parallel: every directory is listed by its own fork/join task,
+// so the pool's threads list sibling directories at the same time. Regular files are
+// handed to onFile as soon as they are found, from the walking threads, so work on them
+// can start long before the walk is over.
+//
+// Symbolic links to directories are not followed, which keeps the walk free of cycles.
+// A directory that cannot be listed is reported and skipped.
+class FileWalker {
+    static void walk(List<Path> roots, ForkJoinPool pool, Consumer<Path> onFile) {
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                List<Visit> visits = new ArrayList<>();
+                for (Path root : roots) {
+                    visits.add(new Visit(root, onFile));
+                }
+                invokeAll(visits);
+            }
+        });
+    }
+
+    private static final class Visit extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path path;
+        private final Consumer<Path> onFile;
+
+        Visit(Path path, Consumer<Path> onFile) {
+            this.path = path;
+            this.onFile = onFile;
+        }
+
+        @Override
+        protected void compute() {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                System.err.println("Cannot read " + path + ": " + e);
+                return;
+            }
+            if (attributes.isRegularFile()) {
+                onFile.accept(path);
+            } else if (attributes.isDirectory()) {
+                List<Visit> children = new ArrayList<>();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                    for (Path entry : entries) {
+                        if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                            children.add(new Visit(entry, onFile));
+                        } else if (Files.isRegularFile(entry)) {
+                            onFile.accept(entry);
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Cannot list " + path + ": " + e);
+                }
+                invokeAll(children);
+            } else {
+                System.err.println("Non-regular file: " + path);
+            }
+        }
+    }
+}
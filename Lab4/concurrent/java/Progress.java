@@ -0,0 +1,58 @@
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bytes read by every reader in the process, reported once a second between start() and
+// stop() and once more by stop(). Reports go to stderr so they never mix with the sums.
+class Progress {
+    private static final LongAdder bytesRead = new LongAdder();
+    private static final LongAdder filesFound = new LongAdder();
+
+    private final PrintStream out;
+    private final long start = System.nanoTime();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long lastBytes;
+    private long lastTime = start;
+
+    private Progress(PrintStream out) {
+        this.out = out;
+    }
+
+    static Progress start(PrintStream out) {
+        Progress progress = new Progress(out);
+        progress.timer.scheduleAtFixedRate(progress::report, 1, 1, TimeUnit.SECONDS);
+        return progress;
+    }
+
+    // Called by the readers for every buffer or region they get through
+    static void read(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    // Called by the walk for every file it finds
+    static void found() {
+        filesFound.increment();
+    }
+
+    void stop() {
+        timer.shutdownNow();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        out.printf("%,d files, %.1f MB read in %.2f s (%.1f MB/s)%n",
+                   filesFound.sum(), bytesRead.sum() / 1e6, seconds, bytesRead.sum() / 1e6 / seconds);
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+        long bytes = bytesRead.sum();
+        double rate = (bytes - lastBytes) / 1e6 / ((now - lastTime) / 1e9);
+        out.printf("%,d files, %.1f MB read, %.1f MB/s%n", filesFound.sum(), bytes / 1e6, rate);
+        lastBytes = bytes;
+        lastTime = now;
+    }
+}
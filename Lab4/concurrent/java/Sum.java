@@ -1,74 +1,300 @@
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.stream.IntStream;
 
 public class Sum {
-    private static final Map<Long, List<String>> sumMap = new ConcurrentHashMap<>();
+    private static final Map<Path, Long> sums = new ConcurrentHashMap<>();
     private static final Object lock = new Object();
     private static long totalSum = 0;
 
-    public static int sum(FileInputStream fis) throws IOException {
-        int byteRead;
-        int sum = 0;
-        while ((byteRead = fis.read()) != -1) {
-            sum += byteRead;
+    // Files up to this size are read through one reusable buffer; larger ones are mapped
+    // in regions that are summed in parallel
+    private static final long MAP_THRESHOLD = 64L << 20;
+    private static final long REGION_SIZE = 64L << 20;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    // Every other byte of a long; two of them cover all eight bytes
+    private static final long LOW_BYTES = 0x00FF00FF00FF00FFL;
+    // Longs added into 16-bit lanes before they can overflow: 128 * 2 * 255 < 65536
+    private static final int LANE_FLUSH = 128;
+
+    private static final ThreadLocal<ByteBuffer> readBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+
+    // Sums the regions of large files; one thread per core unless main says otherwise
+    private static ForkJoinPool cpuPool = ForkJoinPool.commonPool();
+
+    // Sum of the bytes from the stream's current position to the end of the file
+    public static long sum(FileInputStream fis) throws IOException {
+        return sum(fis.getChannel());
+    }
+
+    public static long sum(FileChannel channel) throws IOException {
+        return sum(channel, null);
+    }
+
+    // Same, also feeding every byte to digest when it is not null
+    static long sum(FileChannel channel, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = readBuffer.get();
+        long sum = 0;
+        while (true) {
+            buffer.clear();
+            if (channel.read(buffer) == -1) {
+                return sum;
+            }
+            buffer.flip();
+            Progress.read(buffer.remaining());
+            sum += sum(buffer);
+            if (digest != null) {
+                digest.update(buffer);
+            }
         }
-        return sum;
     }
 
     public static long sum(String path) throws IOException {
+        return sum(path, null);
+    }
+
+    // Sum of the file's bytes, which are also fed to digest when it is not null, in the
+    // same pass, so a file is read once for both
+    static long sum(String path, MessageDigest digest) throws IOException {
         Path filePath = Paths.get(path);
         if (Files.isRegularFile(filePath)) {
-            try (FileInputStream fis = new FileInputStream(filePath.toString())) {
-                return sum(fis);
+            try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size <= MAP_THRESHOLD) {
+                    return sum(channel, digest);
+                }
+                return digest == null ? sumMapped(channel, size) : sumMapped(channel, size, digest);
             }
         } else {
             throw new RuntimeException("Non-regular file: " + path);
         }
     }
 
+    // Maps the file in regions and sums them on the CPU pool
+    private static long sumMapped(FileChannel channel, long size) throws IOException {
+        int regions = (int) ((size + REGION_SIZE - 1) / REGION_SIZE);
+        try {
+            return cpuPool.submit(() -> IntStream.range(0, regions).parallel().mapToLong(region -> {
+                long start = region * REGION_SIZE;
+                long length = Math.min(REGION_SIZE, size - start);
+                try {
+                    long sum = sum(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+                    Progress.read(length);
+                    return sum;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum()).join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // The digest has to see the regions in order, so they are mapped one at a time; each
+    // one is summed on the CPU pool while this thread digests it
+    private static long sumMapped(FileChannel channel, long size, MessageDigest digest) throws IOException {
+        long sum = 0;
+        for (long start = 0; start < size; start += REGION_SIZE) {
+            long length = Math.min(REGION_SIZE, size - start);
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            // The digest moves the region's position, so the sum gets its own view
+            ByteBuffer view = region.duplicate();
+            ForkJoinTask<Long> regionSum = cpuPool.submit(() -> sum(view));
+            digest.update(region);
+            sum += regionSum.join();
+            Progress.read(length);
+        }
+        return sum;
+    }
+
+    // Sum of the bytes between position and limit, eight at a time: each long is split into
+    // two sets of four 16-bit lanes, which are added up and folded into the total every
+    // LANE_FLUSH longs. Leaves the buffer's position unchanged.
+    static long sum(ByteBuffer buffer) {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        int longsEnd = position + ((limit - position) & ~7);
+        long sum = 0;
+        int i = position;
+        while (i < longsEnd) {
+            int blockEnd = Math.min(longsEnd, i + LANE_FLUSH * 8);
+            long lanes = 0;
+            for (; i < blockEnd; i += 8) {
+                long value = buffer.getLong(i);
+                lanes += (value & LOW_BYTES) + ((value >>> 8) & LOW_BYTES);
+            }
+            sum += (lanes & 0xFFFF) + ((lanes >>> 16) & 0xFFFF) + ((lanes >>> 32) & 0xFFFF) + (lanes >>> 48);
+        }
+        for (; i < limit; i++) {
+            sum += buffer.get(i) & 0xFF;
+        }
+        return sum;
+    }
+
     public static void main(String[] args) throws Exception {
+        // --dedup only looks for duplicate files, reading as little of them as it can.
+        // --cache keeps sums and digests in a file, so unchanged files are not read again.
+        // --io-threads and --cpu-threads override the sizes picked for the storage and cores.
+        boolean dedupOnly = false;
+        Path cacheFile = null;
+        int ioThreads = 0;
+        int cpuThreads = Runtime.getRuntime().availableProcessors();
+        int first = 0;
+        while (first < args.length && args[first].startsWith("--")) {
+            if (args[first].equals("--dedup")) {
+                dedupOnly = true;
+                first++;
+            } else if (args[first].equals("--cache") && first + 1 < args.length) {
+                cacheFile = Paths.get(args[first + 1]);
+                first += 2;
+            } else if (args[first].equals("--io-threads") && first + 1 < args.length) {
+                ioThreads = Integer.parseInt(args[first + 1]);
+                first += 2;
+            } else if (args[first].equals("--cpu-threads") && first + 1 < args.length) {
+                cpuThreads = Integer.parseInt(args[first + 1]);
+                first += 2;
+            } else {
+                // Unknown option, or one missing its value
+                usage();
+            }
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
         if (args.length < 1) {
-            System.err.println("Usage: java ConcurrentSum filepath1 filepath2 filepathN");
-            System.exit(1);
+            usage();
+        }
+        ChecksumCache cache = cacheFile != null ? new ChecksumCache(cacheFile) : new ChecksumCache();
+        List<Path> roots = new ArrayList<>();
+        for (String path : args) {
+            roots.add(Paths.get(path));
         }
 
-        int n = args.length;
-        int maxThreads = Math.max(1, n / 2);
-        ExecutorService executor = Executors.newFixedThreadPool(maxThreads);
-        List<Future<Map.Entry<String, Long>>> futures = new ArrayList<>();
+        // Reads and directory listings wait on the storage, so how many run at once depends
+        // on the storage; summing large files waits on nothing but the cores
+        if (ioThreads < 1) {
+            ioThreads = ioThreadsFor(roots.get(0), cpuThreads);
+        }
+        ForkJoinPool executor = new ForkJoinPool(ioThreads);
+        cpuPool = new ForkJoinPool(cpuThreads);
 
-        for (String path : args) {
-            futures.add(executor.submit(() -> {
-                long fileSum = sum(path);
-                System.out.println(path + " : " + fileSum);
-                
-                synchronized (lock) {
-                    totalSum += fileSum;
+        boolean sumFiles = !dedupOnly;
+        Queue<Path> files = new ConcurrentLinkedQueue<>();
+        Set<Path> unreadable = ConcurrentHashMap.newKeySet();
+        Queue<Future<Map.Entry<Path, Long>>> futures = new ConcurrentLinkedQueue<>();
+
+        Progress progress = Progress.start(System.err);
+        try {
+            // Files are summed as the walk finds them
+            FileWalker.walk(roots, executor, path -> {
+                files.add(path);
+                Progress.found();
+                if (sumFiles) {
+                    futures.add(executor.submit(() -> {
+                        long fileSum;
+                        try {
+                            fileSum = cache.sum(path);
+                        } catch (IOException e) {
+                            unreadable.add(path);
+                            throw e;
+                        }
+                        System.out.println(path + " : " + fileSum);
+
+                        synchronized (lock) {
+                            totalSum += fileSum;
+                        }
+
+                        sums.put(path, fileSum);
+                        return Map.entry(path, fileSum);
+                    }));
                 }
-                
-                sumMap.computeIfAbsent(fileSum, k -> Collections.synchronizedList(new ArrayList<>())).add(path);
-                return Map.entry(path, fileSum);
-            }));
+            });
+
+            if (!dedupOnly) {
+                for (Future<Map.Entry<Path, Long>> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        System.err.println(errorMessage(e));
+                    }
+                }
+                System.out.println("Total Sum: " + totalSum);
+            }
+
+            // Same contents, same sum: duplicates are printed under their sum, or under their
+            // SHA-256 when no sums were computed. Files that failed above were reported already.
+            files.removeAll(unreadable);
+            for (Map.Entry<String, List<Path>> entry : Duplicates.find(files, executor, cache).entrySet()) {
+                List<Path> paths = entry.getValue();
+                String key = dedupOnly ? entry.getKey() : String.valueOf(sums.get(paths.get(0)));
+                StringBuilder line = new StringBuilder(key);
+                for (Path path : paths) {
+                    line.append(' ').append(path);
+                }
+                System.out.println(line);
+            }
+        } finally {
+            progress.stop();
         }
 
         executor.shutdown();
+        cpuPool.shutdown();
         executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        
-        System.out.println("Total Sum: " + totalSum);
+        cache.save();
+    }
 
-        for (Map.Entry<Long, List<String>> entry : sumMap.entrySet()) {
-            if (entry.getValue().size() > 1) {
-                System.out.println(entry.getKey() + " " + String.join(" ", entry.getValue()));
+    private static void usage() {
+        System.err.println("Usage: java Sum [--dedup] [--cache cachefile] [--io-threads n] [--cpu-threads n] path1 path2 pathN");
+        System.err.println("Directories are read with everything under them");
+        System.exit(1);
+    }
+
+    // Message of the IOException behind a failed task. The fork/join pool wraps checked
+    // exceptions in RuntimeExceptions, and the future wraps those again.
+    static String errorMessage(Throwable e) {
+        Throwable cause = e;
+        while (!(cause instanceof IOException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage();
+    }
+
+    // Reads to keep in flight on the storage holding root. A spinning disk gets slower
+    // when its head is pulled between files, so it gets two; SSDs and network shares
+    // only reach their bandwidth with many requests queued. Linux tells which is which
+    // in /sys; elsewhere the storage is assumed not to be rotational.
+    private static int ioThreadsFor(Path root, int cores) {
+        int solidState = Math.max(4, Math.min(64, 4 * cores));
+        try {
+            String device = Paths.get(Files.getFileStore(root).name()).getFileName().toString();
+            Path block = Paths.get("/sys/class/block", device);
+            // A partition has no queue of its own; its disk's is one level up
+            Path rotational = block.resolve("queue/rotational");
+            if (!Files.exists(rotational)) {
+                rotational = block.resolve("../queue/rotational");
+            }
+            if (Files.exists(rotational) && Files.readAllLines(rotational).get(0).trim().equals("1")) {
+                return 2;
             }
+        } catch (IOException | RuntimeException e) {
+            // Unknown storage
         }
+        return solidState;
     }
 }
\ No newline at end of file
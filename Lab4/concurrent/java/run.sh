@@ -4,7 +4,8 @@ BASE_DIR=$(dirname -- "$( readlink -f -- "$0"; )")
 
 # Verifica se pelo menos um argumento foi passado
 if [ "$#" -lt 1 ]; then
-  echo "Uso: $0 arquivo1 [arquivo2 ...]"
+  echo "Uso: $0 [--dedup] [--cache arquivo_cache] [--io-threads n] [--cpu-threads n] caminho1 [caminho2 ...]"
+  echo "Diretórios são lidos com tudo o que há dentro deles"
   exit 1
 fi
 